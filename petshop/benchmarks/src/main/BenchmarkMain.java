@@ -0,0 +1,42 @@
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+public class BenchmarkMain {
+
+    /**
+     * Runs the benchmarks matching the given regular expression (all of them by default)
+     * and writes the results as JSON to the results directory. The GC profiler is always
+     * enabled so each result also records its allocation rate.
+     */
+    public static void main(String[] args) throws Exception {
+        var include = "benchmark\\..*";
+        if (args.length >= 1) {
+            include = args[0];
+        }
+
+        var resultsDir = Path.of("benchmarks", "results");
+        if (args.length >= 2) {
+            resultsDir = Path.of(args[1]);
+        }
+        Files.createDirectories(resultsDir);
+
+        var timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        var resultFile = resultsDir.resolve(timestamp + ".json");
+
+        var options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.toString())
+                .build();
+        new Runner(options).run();
+        System.out.printf("Results written to %s%n", resultFile);
+    }
+}
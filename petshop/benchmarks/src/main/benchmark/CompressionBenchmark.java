@@ -0,0 +1,77 @@
+package benchmark;
+
+import model.Pet;
+import model.PetList;
+import model.PetType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures the CPU cost of gzipping the GET /pet body at each compression level, the same
+ * way the server does. Level 0 is the uncompressed baseline. The compressed size for each
+ * level is printed during setup, so the time can be weighed against the bytes saved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    @Param({"1000", "100000"})
+    private int pets;
+
+    @Param({"0", "1", "6", "9"})
+    private int level;
+
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        var list = new PetList();
+        for (int i = 1; i <= pets; i++) {
+            list.add(new Pet(i, "pet-" + i, PetType.values()[i % PetType.values().length]));
+        }
+        json = list.toString().getBytes(StandardCharsets.UTF_8);
+        System.out.printf("%n%d pets at level %d: %d bytes sent for %d bytes of JSON%n", pets, level, compress(), json.length);
+    }
+
+    @Benchmark
+    public long compress() throws IOException {
+        var counter = new CountingOutputStream();
+        if (level == 0) {
+            counter.write(json);
+            return counter.count;
+        }
+        try (var gzip = new LeveledGzipOutputStream(counter, level)) {
+            gzip.write(json);
+        }
+        return counter.count;
+    }
+
+    private static class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.openjdk.jmh.annotations.*;
+import server.websocket.ConnectionManager;
+import webSocketMessages.Notification;
+import webSocketMessages.Topic;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of one {@link ConnectionManager#broadcast} as the number of
+ * connected sessions grows. The fan-out runs on the benchmark thread so that the
+ * whole delivery is measured, not just the hand-off to the fan-out thread.
+ * <br/>
+ * The frame transport sends one shared UTF-8 payload to every session. The string
+ * transport sends through the Jetty API, which encodes the message again for each
+ * session. Run with the GC profiler to compare the allocation per broadcast.
+ * <br/>
+ * Every session subscribes to one of {@value #PET_TOPICS} pet topics, so broadcastToTopic
+ * reaches about one in {@value #PET_TOPICS} sessions, while broadcast reaches them all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionManagerBenchmark {
+    private static final int PET_TOPICS = 100;
+
+    @Param({"1", "100", "10000"})
+    private int sessions;
+
+    @Param({"frame", "string"})
+    private String transport;
+
+    private ConnectionManager connections;
+    private Notification notification;
+    private List<String> topics;
+
+    @Setup
+    public void setup() {
+        var fakeSessions = new FakeSessions();
+        connections = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run) {
+            @Override
+            protected CoreSession coreSessionOf(Session session) {
+                return transport.equals("frame") ? fakeSessions.coreSession() : null;
+            }
+        };
+        for (int i = 0; i < sessions; i++) {
+            connections.subscribe(fakeSessions.create(), Topic.pet(i % PET_TOPICS + 1));
+        }
+        notification = new Notification(Notification.Type.NOISE, "joe says meow");
+        topics = List.of(Topic.pet(1));
+    }
+
+    @Benchmark
+    public void broadcast() {
+        connections.broadcast(null, notification);
+    }
+
+    @Benchmark
+    public void broadcastToTopic() {
+        connections.broadcast(null, notification, topics);
+    }
+}
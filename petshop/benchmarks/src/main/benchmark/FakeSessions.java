@@ -0,0 +1,82 @@
+package benchmark;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.Frame;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds WebSocket sessions that accept every message without any network I/O, so
+ * broadcast benchmarks measure only the server's own fan-out cost. Non-blocking sends
+ * complete immediately. Strings are encoded to UTF-8 on every send, as Jetty does, while
+ * frames sent through {@link #coreSession()} are written from their existing payload.
+ */
+public class FakeSessions {
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final CoreSession coreSession = new CoreSession.Empty() {
+        @Override
+        public void sendFrame(Frame frame, Callback callback, boolean batch) {
+            messagesSent.increment();
+            bytesSent.add(frame.getPayloadLength());
+            callback.succeeded();
+        }
+    };
+
+    public long messagesSent() {
+        return messagesSent.sum();
+    }
+
+    public long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * A Jetty core session shared by all the fake sessions, for sending pre-encoded frames.
+     */
+    public CoreSession coreSession() {
+        return coreSession;
+    }
+
+    public Session create() {
+        RemoteEndpoint remote = proxy(RemoteEndpoint.class, (method, args) -> {
+            if (method.startsWith("send")) {
+                messagesSent.increment();
+                if (args[0] instanceof String text) {
+                    bytesSent.add(text.getBytes(StandardCharsets.UTF_8).length);
+                }
+                if (args[args.length - 1] instanceof WriteCallback callback) {
+                    callback.writeSuccess();
+                }
+            }
+            return null;
+        });
+
+        return proxy(Session.class, (method, args) -> switch (method) {
+            case "getRemote" -> remote;
+            case "isOpen" -> true;
+            default -> null;
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) ->
+                switch (method.getName()) {
+                    case "equals" -> self == args[0];
+                    case "hashCode" -> System.identityHashCode(self);
+                    case "toString" -> type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+                    default -> handler.invoke(method.getName(), args);
+                });
+        return type.cast(proxy);
+    }
+}
@@ -0,0 +1,46 @@
+package benchmark;
+
+import model.Pet;
+import model.PetList;
+import model.PetType;
+import org.openjdk.jmh.annotations.*;
+import serialization.Serializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serializing and then parsing the pet models the way they cross the wire
+ * between the server and the client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonRoundTripBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int listSize;
+
+    private Pet pet;
+    private PetList pets;
+
+    @Setup
+    public void setup() {
+        pet = new Pet(42, "joe", PetType.CAT);
+        pets = new PetList();
+        for (int i = 1; i <= listSize; i++) {
+            pets.add(new Pet(i, "pet-" + i, PetType.values()[i % PetType.values().length]));
+        }
+    }
+
+    @Benchmark
+    public Pet petRoundTrip() {
+        return Serializer.fromJson(Serializer.toJson(pet), Pet.class);
+    }
+
+    @Benchmark
+    public PetList petListRoundTrip() {
+        return Serializer.fromJson(Serializer.toJson(pets), PetList.class);
+    }
+}
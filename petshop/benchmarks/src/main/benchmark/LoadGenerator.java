@@ -0,0 +1,313 @@
+package benchmark;
+
+import client.websocket.WebSocketFacade;
+import dataaccess.DataAccess;
+import dataaccess.MemoryDataAccess;
+import dataaccess.MySqlDataAccess;
+import exception.ResponseException;
+import model.Pet;
+import model.PetQuery;
+import model.PetType;
+import serialization.Serializer;
+import server.PetServer;
+import server.ServerFacade;
+import service.PetService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a {@link PetServer} with a steady mix of HTTP operations and WebSocket visitors,
+ * and writes the latency, throughput, and errors of each operation to a JSON file.
+ * <br/>
+ * Arrivals are open-loop: operations start on a fixed schedule, whether or not earlier ones
+ * have finished, and each latency is measured from when the operation was due rather than
+ * from when it was sent. A server that falls behind therefore shows up as growing latency,
+ * as it would for real users, instead of quietly slowing the generator down.
+ * <br/>
+ * Each visitor holds a WebSocket open and repeatedly enters the shop, stays for up to the
+ * visit time, and leaves, so every entry and exit is broadcast to the other visitors.
+ * <br/>
+ * Unless a URL is given, a server is started in this JVM on the memory store, or on MySQL
+ * with --store=sql.
+ * <pre>
+ * java benchmark.LoadGenerator [--url=http://localhost:8080] [--store=memory|sql]
+ *     [--rate=500] [--duration=30] [--mix=add:30,list:10,page:50,delete:10]
+ *     [--visitors=50] [--visit-millis=1000] [--max-in-flight=2000] [--binary]
+ *     [--out=benchmarks/results/load-TIMESTAMP.json]
+ * </pre>
+ */
+public class LoadGenerator {
+
+    enum Operation {
+        add, list, page, delete, enter, exit
+    }
+
+    record OperationResult(long count, long errors, double throughput, double meanMicros,
+                           long p50Micros, long p99Micros, long p999Micros, long maxMicros) {
+    }
+
+    record Report(Map<String, String> options, double seconds, long notificationsReceived,
+                  Map<Operation, OperationResult> operations) {
+    }
+
+    private final Map<String, String> options;
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+    private final ConcurrentLinkedQueue<Integer> ids = new ConcurrentLinkedQueue<>();
+    private final AtomicLong notifications = new AtomicLong();
+    // Operations started but not yet finished, plus one for the generator until it stops.
+    private final AtomicLong inFlight = new AtomicLong(1);
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+
+    LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = new LinkedHashMap<String, String>();
+        options.put("store", "memory");
+        options.put("rate", "500");
+        options.put("duration", "30");
+        options.put("mix", "add:30,list:10,page:50,delete:10");
+        options.put("visitors", "50");
+        options.put("visit-millis", "1000");
+        options.put("max-in-flight", "2000");
+        options.put("binary", "false");
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+
+        PetServer server = null;
+        if (!options.containsKey("url")) {
+            DataAccess dataAccess = options.get("store").equals("sql") ? new MySqlDataAccess() : new MemoryDataAccess();
+            dataAccess.deleteAllPets();
+            server = new PetServer(new PetService(dataAccess)).run(0);
+            options.put("url", "http://localhost:" + server.port());
+        }
+
+        try {
+            var report = new LoadGenerator(options).run();
+            var out = options.containsKey("out") ? Path.of(options.get("out")) : defaultOutput();
+            Files.createDirectories(out.toAbsolutePath().getParent());
+            Files.writeString(out, Serializer.gson().newBuilder().setPrettyPrinting().create().toJson(report));
+            print(report);
+            System.out.printf("Results written to %s%n", out);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Path defaultOutput() {
+        var timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        return Path.of("benchmarks", "results", "load-" + timestamp + ".json");
+    }
+
+    Report run() throws Exception {
+        var url = options.get("url");
+        int rate = Integer.parseInt(options.get("rate"));
+        if (rate < 1 || rate > TimeUnit.SECONDS.toNanos(1)) {
+            throw new IllegalArgumentException("The rate must be between 1 and 1000000000 requests a second");
+        }
+        var duration = Duration.ofSeconds(Long.parseLong(options.get("duration")));
+        var mix = parseMix(options.get("mix"));
+
+        try (var callbacks = Executors.newVirtualThreadPerTaskExecutor()) {
+            var facade = ServerFacade.builder(url)
+                    .binary(Boolean.parseBoolean(options.get("binary")))
+                    .executor(callbacks)
+                    .maxConcurrentRequests(Integer.parseInt(options.get("max-in-flight")))
+                    .build();
+
+            // Seed the store so that deletes and pages have something to work on from the start.
+            var seed = new ArrayList<Pet>();
+            for (int i = 0; i < 1000; i++) {
+                seed.add(randomPet());
+            }
+            facade.addPets(seed).forEach(pet -> ids.add(pet.id()));
+
+            var visitors = startVisitors(url, Integer.parseInt(options.get("visitors")),
+                    Duration.ofMillis(Long.parseLong(options.get("visit-millis"))), duration);
+
+            long start = System.nanoTime();
+            generate(facade, mix, rate, duration);
+            drained.join();
+            for (var visitor : visitors) {
+                visitor.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            var results = new EnumMap<Operation, OperationResult>(Operation.class);
+            for (Operation operation : Operation.values()) {
+                var histogram = latencies.get(operation);
+                if (histogram.count() > 0) {
+                    results.put(operation, new OperationResult(histogram.count(), errors.get(operation).get(),
+                            histogram.count() / seconds, histogram.mean(), histogram.percentile(0.50),
+                            histogram.percentile(0.99), histogram.percentile(0.999), histogram.max()));
+                }
+            }
+            return new Report(options, seconds, notifications.get(), results);
+        }
+    }
+
+    /**
+     * Starts one operation every 1/rate seconds until the duration is up. The operations are
+     * counted rather than kept, so a long run does not hold on to every one it started, and
+     * {@link #drained} completes once the last of them finishes.
+     */
+    private void generate(ServerFacade facade, Operation[] mix, int rate, Duration duration) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        var random = ThreadLocalRandom.current();
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            var operation = mix[random.nextInt(mix.length)];
+            inFlight.incrementAndGet();
+            measure(operation, due, start(facade, operation)).whenComplete((result, ex) -> finished());
+        }
+        finished();
+    }
+
+    private void finished() {
+        if (inFlight.decrementAndGet() == 0) {
+            drained.complete(null);
+        }
+    }
+
+    private CompletableFuture<?> start(ServerFacade facade, Operation operation) {
+        return switch (operation) {
+            case add -> facade.addPetAsync(randomPet()).thenAccept(pet -> ids.add(pet.id()));
+            case list -> facade.listPetsAsync();
+            case page -> {
+                var type = PetType.values()[ThreadLocalRandom.current().nextInt(PetType.values().length)];
+                yield facade.listPetsAsync(new PetQuery(100).ofType(type));
+            }
+            case delete -> {
+                Integer id = ids.poll();
+                // With nothing left to delete, add instead, so the store refills.
+                yield id != null ? facade.deletePetAsync(id) : facade.addPetAsync(randomPet()).thenAccept(pet -> ids.add(pet.id()));
+            }
+            default -> throw new IllegalArgumentException("Not an HTTP operation: " + operation);
+        };
+    }
+
+    private CompletableFuture<?> measure(Operation operation, long due, CompletableFuture<?> future) {
+        return future.whenComplete((result, ex) -> {
+            latencies.get(operation).record((System.nanoTime() - due) / 1000);
+            if (ex != null) {
+                errors.get(operation).incrementAndGet();
+            }
+        });
+    }
+
+    private List<Thread> startVisitors(String url, int count, Duration visit, Duration duration) throws ResponseException {
+        var threads = new ArrayList<Thread>();
+        long end = System.nanoTime() + duration.toNanos();
+        for (int i = 0; i < count; i++) {
+            var name = "visitor-" + i;
+            var socket = new WebSocketFacade(url, notification -> notifications.incrementAndGet());
+            threads.add(Thread.ofVirtual().name(name).start(() -> visit(socket, name, visit, end)));
+        }
+        return threads;
+    }
+
+    private void visit(WebSocketFacade socket, String name, Duration visit, long end) {
+        var random = ThreadLocalRandom.current();
+        try (socket) {
+            while (System.nanoTime() < end) {
+                timed(Operation.enter, () -> socket.enterPetShop(name));
+                Thread.sleep(random.nextLong(visit.toMillis() + 1));
+                timed(Operation.exit, () -> socket.leavePetShop(name));
+                Thread.sleep(random.nextLong(visit.toMillis() + 1));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ResponseException ex) {
+            errors.get(Operation.exit).incrementAndGet();
+        }
+    }
+
+    private interface Action {
+        void run() throws ResponseException;
+    }
+
+    private void timed(Operation operation, Action action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } catch (ResponseException ex) {
+            errors.get(operation).incrementAndGet();
+        }
+        latencies.get(operation).record((System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * Expands a mix such as add:30,list:70 into a table with one slot per unit of weight,
+     * so an operation can be picked with a single random index.
+     */
+    private static Operation[] parseMix(String mix) {
+        var table = new ArrayList<Operation>();
+        for (String entry : mix.split(",")) {
+            var parts = entry.split(":");
+            var operation = Operation.valueOf(parts[0].trim());
+            if (operation == Operation.enter || operation == Operation.exit) {
+                throw new IllegalArgumentException("Visitors are set with --visitors, not the mix");
+            }
+            for (int i = Integer.parseInt(parts[1].trim()); i > 0; i--) {
+                table.add(operation);
+            }
+        }
+        if (table.isEmpty()) {
+            throw new IllegalArgumentException("The mix is empty");
+        }
+        return table.toArray(Operation[]::new);
+    }
+
+    private static Pet randomPet() {
+        var random = ThreadLocalRandom.current();
+        var type = PetType.values()[random.nextInt(PetType.values().length)];
+        return new Pet(0, "pet-" + random.nextInt(100_000), type);
+    }
+
+    private static void print(Report report) {
+        System.out.printf("%.1f s, %d notifications received%n", report.seconds(), report.notificationsReceived());
+        System.out.printf("%-8s %9s %7s %9s %9s %9s %9s %9s%n", "op", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        report.operations().forEach((operation, result) -> System.out.printf("%-8s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                operation, result.count(), result.errors(), result.throughput(), result.p50Micros() / 1000.0,
+                result.p99Micros() / 1000.0, result.p999Micros() / 1000.0, result.maxMicros() / 1000.0));
+    }
+}
@@ -0,0 +1,113 @@
+package benchmark;
+
+import dataaccess.LogDataAccess;
+import exception.ResponseException;
+import model.Pet;
+import model.PetType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the log store. The write benchmark adds a pet and waits for it to be durable from
+ * many threads at once, the way PetService does, so group commit can share each fsync between
+ * the threads; compare the throughput with sync on and off. The recovery benchmark opens a
+ * store that was closed holding the given number of pets, with and without a snapshot to
+ * start from, to show how long a restart takes.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogDataAccessBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Writes {
+        @Param({"true", "false"})
+        private boolean sync;
+
+        private Path directory;
+        private LogDataAccess log;
+
+        @Setup
+        public void setup() throws IOException, ResponseException {
+            directory = Files.createTempDirectory("pet-log");
+            log = new LogDataAccess(new LogDataAccess.Config(directory, sync, 64L * 1024 * 1024));
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            log.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Restart {
+        @Param({"100000", "1000000"})
+        private int pets;
+
+        @Param({"true", "false"})
+        private boolean snapshot;
+
+        private Path directory;
+        private LogDataAccess.Config config;
+
+        @Setup
+        public void setup() throws IOException, ResponseException {
+            directory = Files.createTempDirectory("pet-log");
+            // Without a snapshot every pet is replayed from the log.
+            config = new LogDataAccess.Config(directory, false, snapshot ? 1024 * 1024 : Long.MAX_VALUE);
+            try (var log = new LogDataAccess(config)) {
+                var batch = new ArrayList<Pet>(1000);
+                for (int i = 0; i < pets; i++) {
+                    batch.add(new Pet(0, "pet-" + i, PetType.values()[i % PetType.values().length]));
+                    if (batch.size() == 1000) {
+                        log.addPets(batch);
+                        batch.clear();
+                    }
+                }
+                log.addPets(batch);
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Pet addPetDurably(Writes state) throws ResponseException {
+        Pet pet = state.log.addPet(new Pet(0, "joe", PetType.CAT));
+        state.log.awaitDurable();
+        return pet;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public LogDataAccess.Recovery recover(Restart state) throws ResponseException {
+        try (var log = new LogDataAccess(state.config)) {
+            return log.recovery();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
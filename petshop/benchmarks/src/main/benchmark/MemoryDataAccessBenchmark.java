@@ -0,0 +1,72 @@
+package benchmark;
+
+import dataaccess.MemoryDataAccess;
+import exception.ResponseException;
+import model.Pet;
+import model.PetList;
+import model.PetType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MemoryDataAccess} operations against stores of increasing size.
+ * Adds are paired with a delete so the store stays the same size for the whole run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class MemoryDataAccessBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int pets;
+
+    private MemoryDataAccess dataAccess;
+    private int maxId;
+
+    @Setup
+    public void setup() {
+        dataAccess = new MemoryDataAccess();
+        for (int i = 0; i < pets; i++) {
+            maxId = dataAccess.addPet(new Pet(0, "pet-" + i, PetType.values()[i % PetType.values().length])).id();
+        }
+    }
+
+    @Benchmark
+    public Pet getPet() {
+        return dataAccess.getPet(ThreadLocalRandom.current().nextInt(1, maxId + 1));
+    }
+
+    @Benchmark
+    public Pet addAndDeletePet() {
+        Pet pet = dataAccess.addPet(new Pet(0, "joe", PetType.CAT));
+        dataAccess.deletePet(pet.id());
+        return pet;
+    }
+
+    @Benchmark
+    public PetList listPets() {
+        return dataAccess.listPets();
+    }
+
+    @Benchmark
+    public void writePets() throws ResponseException {
+        dataAccess.writePets(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Pet getPetContended() {
+        return getPet();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Pet addAndDeletePetContended() {
+        return addAndDeletePet();
+    }
+}
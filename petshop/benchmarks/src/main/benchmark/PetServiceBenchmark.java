@@ -0,0 +1,55 @@
+package benchmark;
+
+import dataaccess.MemoryDataAccess;
+import exception.ResponseException;
+import model.Pet;
+import model.PetList;
+import model.PetType;
+import org.openjdk.jmh.annotations.*;
+import service.PetService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link PetService} operations used by each HTTP endpoint, backed by
+ * the memory data access. Adds are paired with a delete so the store stays the same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PetServiceBenchmark {
+    @Param({"1000"})
+    private int pets;
+
+    private PetService service;
+    private int maxId;
+
+    @Setup
+    public void setup() throws ResponseException {
+        service = new PetService(new MemoryDataAccess());
+        for (int i = 0; i < pets; i++) {
+            maxId = service.addPet(new Pet(0, "pet-" + i, PetType.values()[i % PetType.values().length])).id();
+        }
+    }
+
+    @Benchmark
+    public Pet addPet() throws ResponseException {
+        Pet pet = service.addPet(new Pet(0, "joe", PetType.CAT));
+        service.deletePet(pet.id());
+        return pet;
+    }
+
+    @Benchmark
+    public PetList listPets() throws ResponseException {
+        return service.listPets();
+    }
+
+    @Benchmark
+    public Pet getPet() throws ResponseException {
+        return service.getPet(ThreadLocalRandom.current().nextInt(1, maxId + 1));
+    }
+}
@@ -0,0 +1,91 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import model.Pet;
+import model.PetList;
+import model.PetType;
+import org.openjdk.jmh.annotations.*;
+import serialization.Serializer;
+import webSocketMessages.Notification;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares allocating a new {@link Gson} per call, which is what the pet shop used to do,
+ * with the shared {@link Serializer} and its hand-written type adapters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    private Pet pet;
+    private String petJson;
+    private PetList pets;
+    private Notification notification;
+    private String notificationJson;
+
+    @Setup
+    public void setup() {
+        pet = new Pet(42, "joe", PetType.CAT);
+        petJson = Serializer.toJson(pet);
+        pets = new PetList();
+        for (int i = 1; i <= 100; i++) {
+            pets.add(new Pet(i, "pet-" + i, PetType.values()[i % PetType.values().length]));
+        }
+        notification = new Notification(Notification.Type.NOISE, "joe says meow");
+        notificationJson = Serializer.toJson(notification);
+    }
+
+    @Benchmark
+    public String petToJsonNewGson() {
+        return new Gson().toJson(pet);
+    }
+
+    @Benchmark
+    public String petToJsonShared() {
+        return Serializer.toJson(pet);
+    }
+
+    @Benchmark
+    public Pet petFromJsonNewGson() {
+        return new Gson().fromJson(petJson, Pet.class);
+    }
+
+    @Benchmark
+    public Pet petFromJsonShared() {
+        return Serializer.fromJson(petJson, Pet.class);
+    }
+
+    @Benchmark
+    public String petListToJsonNewGson() {
+        return new Gson().toJson(pets.toArray());
+    }
+
+    @Benchmark
+    public String petListToJsonShared() {
+        return Serializer.toJson(pets);
+    }
+
+    @Benchmark
+    public String notificationToJsonNewGson() {
+        return new Gson().toJson(notification);
+    }
+
+    @Benchmark
+    public String notificationToJsonShared() {
+        return Serializer.toJson(notification);
+    }
+
+    @Benchmark
+    public Notification notificationFromJsonNewGson() {
+        return new Gson().fromJson(notificationJson, Notification.class);
+    }
+
+    @Benchmark
+    public Notification notificationFromJsonShared() {
+        return Serializer.fromJson(notificationJson, Notification.class);
+    }
+}
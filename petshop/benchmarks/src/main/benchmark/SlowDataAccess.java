@@ -0,0 +1,102 @@
+package benchmark;
+
+import dataaccess.DataAccess;
+import exception.ResponseException;
+import model.Pet;
+import model.PetList;
+import model.PetQuery;
+
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * A stand-in for a remote database. Every call blocks for a fixed latency before it is
+ * passed on, so a request holds its thread for about as long as it would waiting on JDBC.
+ */
+public class SlowDataAccess implements DataAccess {
+    private final DataAccess delegate;
+    private final long latencyMillis;
+
+    public SlowDataAccess(DataAccess delegate, long latencyMillis) {
+        this.delegate = delegate;
+        this.latencyMillis = latencyMillis;
+    }
+
+    private void stall() throws ResponseException {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResponseException(ResponseException.Code.ServerError, "Error: interrupted");
+        }
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+        delegate.setWriteListener(listener);
+    }
+
+    @Override
+    public Pet addPet(Pet pet) throws ResponseException {
+        stall();
+        return delegate.addPet(pet);
+    }
+
+    @Override
+    public PetList addPets(Collection<Pet> pets) throws ResponseException {
+        stall();
+        return delegate.addPets(pets);
+    }
+
+    @Override
+    public PetList listPets() throws ResponseException {
+        stall();
+        return delegate.listPets();
+    }
+
+    @Override
+    public PetList listPets(PetQuery query) throws ResponseException {
+        stall();
+        return delegate.listPets(query);
+    }
+
+    @Override
+    public void writePets(OutputStream out) throws ResponseException {
+        stall();
+        delegate.writePets(out);
+    }
+
+    @Override
+    public long version() throws ResponseException {
+        return delegate.version();
+    }
+
+    @Override
+    public void awaitDurable() throws ResponseException {
+        delegate.awaitDurable();
+    }
+
+    @Override
+    public Pet getPet(int id) throws ResponseException {
+        stall();
+        return delegate.getPet(id);
+    }
+
+    @Override
+    public Pet deletePet(Integer id) throws ResponseException {
+        stall();
+        return delegate.deletePet(id);
+    }
+
+    @Override
+    public PetList deletePets(Collection<Integer> ids) throws ResponseException {
+        stall();
+        return delegate.deletePets(ids);
+    }
+
+    @Override
+    public void deleteAllPets() throws ResponseException {
+        stall();
+        delegate.deleteAllPets();
+    }
+}
@@ -0,0 +1,116 @@
+package benchmark;
+
+import dataaccess.MemoryDataAccess;
+import model.Pet;
+import model.PetType;
+import server.PetServer;
+import server.ServerConfig;
+import service.PetService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares request handling on Jetty's pool of platform threads with handling on virtual
+ * threads, when every request waits on a slow database. Each mode starts a {@link PetServer}
+ * over a {@link SlowDataAccess} and fires the requests at it, with up to the given number
+ * in flight at once, then reports throughput and latency percentiles.
+ * <br/>
+ * The platform pool has 250 threads, so it completes about 250 requests per latency period
+ * however many are waiting. On virtual threads every waiting request parks instead, and
+ * throughput grows with the concurrency until the CPU, rather than the pool, is the limit.
+ * <br/>
+ * The client and server run in one JVM, so every in-flight request uses two file descriptors.
+ * Keep the concurrency under half of {@code ulimit -n}.
+ * <pre>
+ * java benchmark.ThreadModelLoadTest [requests=10000] [concurrency=10000] [latencyMillis=50]
+ * </pre>
+ */
+public class ThreadModelLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length >= 1 ? Integer.parseInt(args[0]) : 10_000;
+        int concurrency = args.length >= 2 ? Integer.parseInt(args[1]) : 10_000;
+        int latencyMillis = args.length >= 3 ? Integer.parseInt(args[2]) : 50;
+
+        System.out.printf("%d requests, %d concurrent, %d ms database latency%n", requests, concurrency, latencyMillis);
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            var result = run(ServerConfig.defaults().withVirtualThreads(virtualThreads), requests, concurrency, latencyMillis);
+            System.out.printf("%-8s %s%n", virtualThreads ? "virtual" : "platform", result);
+        }
+    }
+
+    record Result(int requests, int errors, Duration elapsed, long[] sortedMillis) {
+        double throughput() {
+            return requests * 1000.0 / Math.max(1, elapsed.toMillis());
+        }
+
+        long percentile(double p) {
+            if (sortedMillis.length == 0) {
+                return 0;
+            }
+            return sortedMillis[(int) Math.min(sortedMillis.length - 1, Math.ceil(p * sortedMillis.length) - 1)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8.0f req/s  p50 %5d ms  p99 %5d ms  max %5d ms  errors %d",
+                    throughput(), percentile(0.50), percentile(0.99), percentile(1.0), errors);
+        }
+    }
+
+    static Result run(ServerConfig config, int requests, int concurrency, int latencyMillis) throws Exception {
+        var memory = new MemoryDataAccess();
+        for (int i = 0; i < 100; i++) {
+            memory.addPet(new Pet(0, "pet-" + i, PetType.values()[i % PetType.values().length]));
+        }
+        var server = new PetServer(new PetService(new SlowDataAccess(memory, latencyMillis)), config).run(0);
+        var uri = URI.create("http://localhost:" + server.port() + "/pet?limit=10");
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(executor)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+            var request = HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(2)).GET().build();
+
+            var inFlight = new Semaphore(concurrency);
+            var errors = new AtomicInteger();
+            var latencies = new long[requests];
+            List<CompletableFuture<?>> futures = new ArrayList<>(requests);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                inFlight.acquire();
+                int index = i;
+                long sent = System.nanoTime();
+                futures.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, ex) -> {
+                            latencies[index] = (System.nanoTime() - sent) / 1_000_000;
+                            if (ex != null || response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                            inFlight.release();
+                        }));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(ex -> null).join();
+            var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            Arrays.sort(latencies);
+            return new Result(requests, errors.get(), elapsed, latencies);
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package benchmark;
+
+import model.Pet;
+import model.PetList;
+import model.PetType;
+import org.openjdk.jmh.annotations.*;
+import serialization.BinaryCodec;
+import serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON and {@link BinaryCodec} wire formats for a pet list, going to and from
+ * the bytes that are actually sent. The payload size of each format is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+    @Param({"100", "10000"})
+    private int pets;
+
+    private PetList list;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        list = new PetList();
+        for (int i = 1; i <= pets; i++) {
+            list.add(new Pet(i, "pet-" + i, PetType.values()[i % PetType.values().length]));
+        }
+        json = jsonEncode();
+        binary = binaryEncode();
+        System.out.printf("%n%d pets: %d bytes of JSON, %d bytes of binary%n", pets, json.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return Serializer.toJson(list).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public PetList jsonDecode() {
+        return Serializer.fromJson(new String(json, StandardCharsets.UTF_8), PetList.class);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return BinaryCodec.encode(list);
+    }
+
+    @Benchmark
+    public PetList binaryDecode() {
+        return BinaryCodec.decode(binary, PetList.class);
+    }
+}
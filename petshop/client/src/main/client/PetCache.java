@@ -0,0 +1,316 @@
+package client;
+
+import client.websocket.NotificationHandler;
+import client.websocket.WebSocketFacade;
+import exception.ResponseException;
+import model.Pet;
+import model.PetChange;
+import model.PetChanges;
+import model.PetList;
+import server.ServerFacade;
+import webSocketMessages.Notification;
+import webSocketMessages.Topic;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A local copy of the shop's pets, so that listing them does not go to the server.
+ * <br/>
+ * The copy is seeded with one full listing and then kept current by the {@link PetChange}s
+ * the server sends to a WebSocket subscribed to {@link Topic#CHANGES}. Changes are numbered,
+ * and each must follow the last one applied. Changes that arrive while the copy is being
+ * seeded are held and applied afterwards. Applying a change the seed already includes does
+ * no harm, since each change sets a pet's final state rather than adjusting it.
+ * <br/>
+ * If a change is missing, because the server dropped it for a slow connection or the
+ * connection closed, the copy is stale. The next listing reconnects if needed and fetches
+ * the changes it missed from the server's change feed. Only if the feed no longer has them,
+ * or the server has restarted, is the copy seeded again. A RESYNC change, which the server
+ * sends for a write too large to list change by change, also has the copy seeded again,
+ * unless it came before the listing the copy was seeded from.
+ * <br/>
+ * Before answering, a listing waits for the copy to include every write made through the
+ * facade, so a client always sees its own changes.
+ */
+public class PetCache implements NotificationHandler, AutoCloseable {
+    private static final Duration SUBSCRIBE_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration CATCH_UP_TIMEOUT = Duration.ofSeconds(1);
+
+    private enum State {
+        STALE,
+        SUBSCRIBING,
+        SEEDING,
+        CURRENT
+    }
+
+    private final ServerFacade server;
+    private final String serverUrl;
+    // Held for the whole of a reseed, so that only one runs at a time.
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final TreeMap<Integer, Pet> pets = new TreeMap<>();
+    private final ArrayList<PetChange> pending = new ArrayList<>();
+    private WebSocketFacade ws;
+    private State state = State.STALE;
+    private long sequence = 0;
+    private long subscribedAt = -1;
+    private String feed;
+
+    public PetCache(ServerFacade server, String serverUrl) {
+        this.server = server;
+        this.serverUrl = serverUrl;
+    }
+
+    /**
+     * Every pet, in ID order, as the server listed them once the copy included the writes
+     * made through the facade.
+     */
+    public PetList listPets() throws ResponseException {
+        lock.lock();
+        try {
+            if (awaitSequence(server.lastChangeSequence())) {
+                return new PetList(pets.values());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return resync();
+    }
+
+    private PetList resync() throws ResponseException {
+        syncLock.lock();
+        try {
+            WebSocketFacade socket;
+            long resumeAfter;
+            String resumeFeed;
+            lock.lock();
+            try {
+                if (awaitSequence(server.lastChangeSequence())) {
+                    // Another thread finished a reseed while this one waited.
+                    return new PetList(pets.values());
+                }
+                state = State.SUBSCRIBING;
+                subscribedAt = -1;
+                pending.clear();
+                socket = ws;
+                resumeAfter = sequence;
+                resumeFeed = feed;
+            } finally {
+                lock.unlock();
+            }
+
+            if (socket == null) {
+                socket = new WebSocketFacade(serverUrl, this);
+                lock.lock();
+                try {
+                    ws = socket;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            socket.subscribe(Topic.CHANGES);
+            long subscribed = awaitSubscribed();
+
+            // Catch up from where the copy left off, if the server still has every change since.
+            if (resumeFeed != null) {
+                PetChanges missed = server.listChanges(resumeAfter);
+                if (missed != null && missed.feed().equals(resumeFeed) && catchUp(resumeAfter, missed.changes(), resumeAfter)) {
+                    return listCurrent();
+                }
+            }
+
+            // Otherwise start again from a full listing. Every change after the subscription
+            // will arrive, so the listing only has to be at least that recent.
+            PetChanges recent = server.listChanges(subscribed);
+            if (recent == null) {
+                throw new ResponseException(ResponseException.Code.ServerError, "Error: the pets are changing too fast to copy");
+            }
+            PetList seed = server.listPets();
+            lock.lock();
+            try {
+                pets.clear();
+                for (Pet pet : seed) {
+                    pets.put(pet.id(), pet);
+                }
+                feed = recent.feed();
+            } finally {
+                lock.unlock();
+            }
+            // The listing was fetched after these changes, so it already includes any RESYNC among them.
+            long listed = recent.changes().isEmpty() ? subscribed : recent.changes().getLast().sequence();
+            if (!catchUp(subscribed, recent.changes(), listed)) {
+                throw new ResponseException(ResponseException.Code.ServerError, "Error: missed a change to the pets");
+            }
+            return listCurrent();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Applies the changes since the given sequence number, and then those that arrived while
+     * they were fetched. Returns false, leaving the copy waiting to be seeded, if one is missing
+     * or is a RESYNC after the listed sequence number.
+     */
+    private boolean catchUp(long after, List<PetChange> changes, long listed) throws ResponseException {
+        lock.lock();
+        try {
+            if (state != State.SEEDING) {
+                throw new ResponseException(ResponseException.Code.ServerError, "Error: lost the connection for pet changes");
+            }
+            sequence = after;
+            state = State.CURRENT;
+            apply(changes, listed);
+            apply(pending, listed);
+            if (state != State.CURRENT) {
+                state = State.SEEDING;
+                return false;
+            }
+            pending.clear();
+            changed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PetList listCurrent() {
+        lock.lock();
+        try {
+            return new PetList(pets.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the server to confirm the subscription, and returns the sequence number it
+     * started after.
+     */
+    private long awaitSubscribed() throws ResponseException {
+        lock.lock();
+        try {
+            long remaining = SUBSCRIBE_TIMEOUT.toNanos();
+            while (state == State.SUBSCRIBING && subscribedAt < 0 && remaining > 0) {
+                remaining = changed.awaitNanos(remaining);
+            }
+            if (state != State.SUBSCRIBING || subscribedAt < 0) {
+                state = State.STALE;
+                throw new ResponseException(ResponseException.Code.ServerError, "Error: could not subscribe to pet changes");
+            }
+            state = State.SEEDING;
+            return subscribedAt;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            state = State.STALE;
+            throw new ResponseException(ResponseException.Code.ServerError, "Error: interrupted");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits, briefly, for the copy to reach the sequence number. Returns false if the copy is
+     * stale or does not get there in time. Must be called holding the lock.
+     */
+    private boolean awaitSequence(long target) {
+        long remaining = CATCH_UP_TIMEOUT.toNanos();
+        try {
+            while (state == State.CURRENT && sequence < target && remaining > 0) {
+                remaining = changed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return state == State.CURRENT && sequence >= target;
+    }
+
+    @Override
+    public void notify(Notification notification) {
+        if (notification.type() != Notification.Type.CHANGE) {
+            return;
+        }
+        List<PetChange> changes = notification.changes();
+        lock.lock();
+        try {
+            if (changes == null || changes.isEmpty()) {
+                if (state == State.SUBSCRIBING) {
+                    subscribedAt = notification.sequence();
+                }
+            } else if (state == State.SUBSCRIBING || state == State.SEEDING) {
+                pending.addAll(changes);
+            } else if (state == State.CURRENT) {
+                apply(changes, sequence);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the changes that follow the current sequence number, skipping those already
+     * applied, and marks the copy stale if one is missing. A RESYNC after the listed sequence
+     * number also marks it stale, and forgets the feed so that it is seeded again rather than
+     * caught up. Must be called holding the lock.
+     */
+    private void apply(List<PetChange> changes, long listed) {
+        for (PetChange change : changes) {
+            if (change.sequence() <= sequence) {
+                continue;
+            }
+            if (change.sequence() != sequence + 1) {
+                state = State.STALE;
+                return;
+            }
+            switch (change.operation()) {
+                case ADD -> pets.put(change.id(), change.pet());
+                case REMOVE -> pets.remove(change.id());
+                case CLEAR -> pets.clear();
+                case RESYNC -> {
+                    if (change.sequence() > listed) {
+                        state = State.STALE;
+                        feed = null;
+                        return;
+                    }
+                }
+            }
+            sequence = change.sequence();
+        }
+    }
+
+    @Override
+    public void disconnected() {
+        lock.lock();
+        try {
+            ws = null;
+            state = State.STALE;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws ResponseException {
+        WebSocketFacade socket;
+        lock.lock();
+        try {
+            socket = ws;
+            ws = null;
+            state = State.STALE;
+        } finally {
+            lock.unlock();
+        }
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
@@ -3,13 +3,14 @@ package client;
 import java.util.Arrays;
 import java.util.Scanner;
 
-import com.google.gson.Gson;
 import model.*;
 import exception.ResponseException;
+import serialization.Serializer;
 import client.websocket.NotificationHandler;
 import server.ServerFacade;
 import client.websocket.WebSocketFacade;
 import webSocketMessages.Notification;
+import webSocketMessages.Topic;
 
 import static client.EscapeSequences.*;
 
@@ -17,11 +18,13 @@ public class PetClient implements NotificationHandler {
     private String visitorName = null;
     private final ServerFacade server;
     private final WebSocketFacade ws;
+    private final PetCache cache;
     private State state = State.SIGNEDOUT;
 
     public PetClient(String serverUrl) throws ResponseException {
         server = new ServerFacade(serverUrl);
         ws = new WebSocketFacade(serverUrl, this);
+        cache = new PetCache(server, serverUrl);
     }
 
     public void run() {
@@ -68,6 +71,8 @@ public class PetClient implements NotificationHandler {
                 case "signout" -> signOut();
                 case "adopt" -> adoptPet(params);
                 case "adoptall" -> adoptAllPets();
+                case "subscribe" -> subscribe(params);
+                case "unsubscribe" -> unsubscribe(params);
                 case "quit" -> "quit";
                 default -> help();
             };
@@ -100,11 +105,10 @@ public class PetClient implements NotificationHandler {
 
     public String listPets() throws ResponseException {
         assertSignedIn();
-        PetList pets = server.listPets();
+        PetList pets = cache.listPets();
         var result = new StringBuilder();
-        var gson = new Gson();
         for (Pet pet : pets) {
-            result.append(gson.toJson(pet)).append('\n');
+            result.append(Serializer.toJson(pet)).append('\n');
         }
         return result.toString();
     }
@@ -114,7 +118,7 @@ public class PetClient implements NotificationHandler {
         if (params.length == 1) {
             try {
                 int id = Integer.parseInt(params[0]);
-                Pet pet = getPet(id);
+                Pet pet = server.getPet(id);
                 if (pet != null) {
                     server.deletePet(id);
                     return String.format("%s says %s", pet.name(), pet.sound());
@@ -136,20 +140,46 @@ public class PetClient implements NotificationHandler {
         return buffer.toString();
     }
 
-    public String signOut() throws ResponseException {
+    public String subscribe(String... params) throws ResponseException {
         assertSignedIn();
-        ws.leavePetShop(visitorName);
-        state = State.SIGNEDOUT;
-        return String.format("%s left the shop", visitorName);
+        String topic = toTopic(params);
+        ws.subscribe(topic);
+        return String.format("Subscribed to %s", topic);
     }
 
-    private Pet getPet(int id) throws ResponseException {
-        for (Pet pet : server.listPets()) {
-            if (pet.id() == id) {
-                return pet;
+    public String unsubscribe(String... params) throws ResponseException {
+        assertSignedIn();
+        String topic = toTopic(params);
+        ws.unsubscribe(topic);
+        return String.format("Unsubscribed from %s", topic);
+    }
+
+    /**
+     * Accepts visitors, pets, a pet type, or a pet ID.
+     */
+    private String toTopic(String... params) throws ResponseException {
+        if (params.length == 1) {
+            String param = params[0];
+            if (param.equals(Topic.VISITORS) || param.equals(Topic.PETS)) {
+                return param;
+            }
+            try {
+                return Topic.pet(Integer.parseInt(param));
+            } catch (NumberFormatException ignored) {
+            }
+            try {
+                return Topic.petType(PetType.valueOf(param.toUpperCase()));
+            } catch (IllegalArgumentException ignored) {
             }
         }
-        return null;
+        throw new ResponseException(ResponseException.Code.ClientError, "Expected: <visitors|pets|pet type|pet id>");
+    }
+
+    public String signOut() throws ResponseException {
+        assertSignedIn();
+        ws.leavePetShop(visitorName);
+        state = State.SIGNEDOUT;
+        return String.format("%s left the shop", visitorName);
     }
 
     public String help() {
@@ -164,6 +194,8 @@ public class PetClient implements NotificationHandler {
                 - adopt <pet id>
                 - rescue <name> <CAT|DOG|FROG|FISH>
                 - adoptAll
+                - subscribe <visitors|pets|pet type|pet id>
+                - unsubscribe <visitors|pets|pet type|pet id>
                 - signOut
                 - quit
                 """;
@@ -4,4 +4,10 @@ import webSocketMessages.Notification;
 
 public interface NotificationHandler {
     void notify(Notification notification);
+
+    /**
+     * Called when the connection closes, after which no more notifications arrive.
+     */
+    default void disconnected() {
+    }
 }
@@ -1,7 +1,7 @@
 package client.websocket;
 
-import com.google.gson.Gson;
 import exception.ResponseException;
+import serialization.Serializer;
 import webSocketMessages.Action;
 import webSocketMessages.Notification;
 
@@ -12,7 +12,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 //need to extend Endpoint for websocket to work properly
-public class WebSocketFacade extends Endpoint {
+public class WebSocketFacade extends Endpoint implements AutoCloseable {
 
     Session session;
     NotificationHandler notificationHandler;
@@ -30,8 +30,12 @@ public class WebSocketFacade extends Endpoint {
             this.session.addMessageHandler(new MessageHandler.Whole<String>() {
                 @Override
                 public void onMessage(String message) {
-                    Notification notification = new Gson().fromJson(message, Notification.class);
-                    notificationHandler.notify(notification);
+                    Notification notification = Serializer.fromJson(message, Notification.class);
+                    if (notification.type() == Notification.Type.BATCH) {
+                        notification.notifications().forEach(notificationHandler::notify);
+                    } else {
+                        notificationHandler.notify(notification);
+                    }
                 }
             });
         } catch (DeploymentException | IOException | URISyntaxException ex) {
@@ -44,19 +48,55 @@ public class WebSocketFacade extends Endpoint {
     public void onOpen(Session session, EndpointConfig endpointConfig) {
     }
 
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        notificationHandler.disconnected();
+    }
+
     public void enterPetShop(String visitorName) throws ResponseException {
+        sendAction(new Action(Action.Type.ENTER, visitorName));
+    }
+
+    public void leavePetShop(String visitorName) throws ResponseException {
+        sendAction(new Action(Action.Type.EXIT, visitorName));
+    }
+
+    /**
+     * Limits the notifications this client receives to the subscribed {@link webSocketMessages.Topic}s.
+     * Until the first subscription, every notification is received.
+     */
+    public void subscribe(String topic) throws ResponseException {
+        sendAction(new Action(Action.Type.SUBSCRIBE, null, topic));
+    }
+
+    public void unsubscribe(String topic) throws ResponseException {
+        sendAction(new Action(Action.Type.UNSUBSCRIBE, null, topic));
+    }
+
+    /**
+     * Asks the server to deliver bursts of notifications together. Batches are unpacked here,
+     * so the notification handler still sees one notification at a time.
+     */
+    public void enableBatching(int windowMillis, int maxItems) throws ResponseException {
+        sendAction(Action.batch(windowMillis, maxItems));
+    }
+
+    public void disableBatching() throws ResponseException {
+        sendAction(Action.batch(0, 0));
+    }
+
+    @Override
+    public void close() throws ResponseException {
         try {
-            var action = new Action(Action.Type.ENTER, visitorName);
-            this.session.getBasicRemote().sendText(new Gson().toJson(action));
+            session.close();
         } catch (IOException ex) {
             throw new ResponseException(ResponseException.Code.ServerError, ex.getMessage());
         }
     }
 
-    public void leavePetShop(String visitorName) throws ResponseException {
+    private void sendAction(Action action) throws ResponseException {
         try {
-            var action = new Action(Action.Type.EXIT, visitorName);
-            this.session.getBasicRemote().sendText(new Gson().toJson(action));
+            this.session.getBasicRemote().sendText(Serializer.toJson(action));
         } catch (IOException ex) {
             throw new ResponseException(ResponseException.Code.ServerError, ex.getMessage());
         }
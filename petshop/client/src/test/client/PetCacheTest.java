@@ -0,0 +1,154 @@
+package client;
+
+import dataaccess.MemoryDataAccess;
+import model.Pet;
+import model.PetChange;
+import model.PetList;
+import model.PetType;
+import org.junit.jupiter.api.*;
+import server.PetServer;
+import server.ServerFacade;
+import service.ChangeFeed;
+import service.PetService;
+import webSocketMessages.Notification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PetCacheTest {
+    private static PetServer petServer;
+    private static String url;
+    private ServerFacade server;
+    private PetCache cache;
+
+    @BeforeAll
+    static void startServer() {
+        petServer = new PetServer();
+        petServer.run(0);
+        url = "http://localhost:" + petServer.port();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        petServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new ServerFacade(url);
+        server.deleteAllPets();
+        cache = new PetCache(server, url);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        cache.close();
+    }
+
+    @Test
+    void seesOwnWrites() throws Exception {
+        Pet joe = server.addPet(new Pet(0, "joe", PetType.CAT));
+        assertEquals(List.of(joe), cache.listPets());
+
+        Pet sally = server.addPet(new Pet(0, "sally", PetType.DOG));
+        assertEquals(List.of(joe, sally), cache.listPets());
+
+        server.deletePet(joe.id());
+        assertEquals(List.of(sally), cache.listPets());
+
+        server.deleteAllPets();
+        assertEquals(List.of(), cache.listPets());
+    }
+
+    @Test
+    void followsOtherWriters() throws Exception {
+        assertEquals(List.of(), cache.listPets());
+
+        var other = new ServerFacade(url);
+        PetList added = other.addPets(List.of(new Pet(0, "joe", PetType.CAT), new Pet(0, "fido", PetType.DOG)));
+        other.deletePet(added.getFirst().id());
+        awaitPets(List.of(added.get(1)));
+        assertEquals(other.listPets(), cache.listPets());
+    }
+
+    @Test
+    void followsWritesSplitAcrossNotifications() throws Exception {
+        assertEquals(List.of(), cache.listPets());
+
+        var pets = new ArrayList<Pet>();
+        for (int i = 0; i < 600; i++) {
+            pets.add(new Pet(0, "joe" + i, PetType.CAT));
+        }
+        PetList added = new ServerFacade(url).addPets(pets);
+        awaitPets(added);
+    }
+
+    @Test
+    void reseedsAfterMissingChange() throws Exception {
+        Pet joe = server.addPet(new Pet(0, "joe", PetType.CAT));
+        assertEquals(List.of(joe), cache.listPets());
+
+        // A change far past the last one means some were lost, so the cache must not use it.
+        long future = server.lastChangeSequence() + 10;
+        var phantom = new Pet(999, "phantom", PetType.FISH);
+        cache.notify(Notification.changes(future, List.of(PetChange.added(future, phantom))));
+        assertEquals(List.of(joe), cache.listPets());
+    }
+
+    @Test
+    void reseedsAfterDisconnect() throws Exception {
+        Pet joe = server.addPet(new Pet(0, "joe", PetType.CAT));
+        assertEquals(List.of(joe), cache.listPets());
+
+        cache.disconnected();
+        Pet sally = new ServerFacade(url).addPet(new Pet(0, "sally", PetType.CAT));
+        assertEquals(List.of(joe, sally), cache.listPets());
+    }
+
+    @Test
+    void reseedsWhenFeedHasMovedOn() throws Exception {
+        var smallFeed = new PetServer(new PetService(new MemoryDataAccess(), new ChangeFeed(2))).run(0);
+        var smallUrl = "http://localhost:" + smallFeed.port();
+        var facade = new ServerFacade(smallUrl);
+        try (var smallCache = new PetCache(facade, smallUrl)) {
+            Pet joe = facade.addPet(new Pet(0, "joe", PetType.CAT));
+            assertEquals(List.of(joe), smallCache.listPets());
+
+            smallCache.disconnected();
+            var other = new ServerFacade(smallUrl);
+            PetList added = other.addPets(List.of(new Pet(0, "sally", PetType.CAT), new Pet(0, "fido", PetType.DOG)));
+            other.deletePet(joe.id());
+            assertEquals(added, smallCache.listPets());
+        } finally {
+            smallFeed.stop();
+        }
+    }
+
+    @Test
+    void reseedsAfterResync() throws Exception {
+        var smallBatches = new PetServer(new PetService(new MemoryDataAccess(), new ChangeFeed(100, 2))).run(0);
+        var smallUrl = "http://localhost:" + smallBatches.port();
+        var facade = new ServerFacade(smallUrl);
+        try (var smallCache = new PetCache(facade, smallUrl)) {
+            Pet joe = facade.addPet(new Pet(0, "joe", PetType.CAT));
+            assertEquals(List.of(joe), smallCache.listPets());
+
+            PetList added = facade.addPets(List.of(new Pet(0, "sally", PetType.CAT), new Pet(0, "fido", PetType.DOG),
+                    new Pet(0, "nemo", PetType.FISH)));
+            var expected = new ArrayList<>(List.of(joe));
+            expected.addAll(added);
+            assertEquals(expected, smallCache.listPets());
+        } finally {
+            smallBatches.stop();
+        }
+    }
+
+    private void awaitPets(List<Pet> expected) throws Exception {
+        for (int attempt = 0; attempt < 50 && !cache.listPets().equals(expected); attempt++) {
+            Thread.sleep(100);
+        }
+        assertEquals(expected, cache.listPets());
+    }
+}
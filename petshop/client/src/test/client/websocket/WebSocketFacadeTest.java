@@ -0,0 +1,93 @@
+package client.websocket;
+
+import model.Pet;
+import model.PetType;
+import org.junit.jupiter.api.*;
+import server.PetServer;
+import server.ServerFacade;
+import webSocketMessages.Notification;
+import webSocketMessages.Topic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketFacadeTest {
+    private static PetServer petServer;
+    private static ServerFacade server;
+    private static String url;
+
+    @BeforeAll
+    static void startServer() {
+        petServer = new PetServer();
+        petServer.run(0);
+        url = "http://localhost:" + petServer.port();
+        server = new ServerFacade(url);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        petServer.stop();
+    }
+
+    @Test
+    void subscriberOnlyHearsItsTopic() throws Exception {
+        BlockingQueue<Notification> received = new LinkedBlockingQueue<>();
+        var ws = new WebSocketFacade(url, received::add);
+        ws.subscribe(Topic.petType(PetType.CAT));
+
+        // The subscription is applied asynchronously, so rescue cats until one is heard.
+        Notification first = null;
+        for (int attempt = 0; attempt < 50 && first == null; attempt++) {
+            server.addPet(new Pet(0, "probe", PetType.CAT));
+            first = received.poll(100, TimeUnit.MILLISECONDS);
+        }
+        assertNotNull(first, "no notification for the subscribed topic");
+
+        server.addPet(new Pet(0, "fido", PetType.DOG));
+        server.addPet(new Pet(0, "tom", PetType.CAT));
+
+        Notification notification;
+        do {
+            notification = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(notification, "missing notification for tom");
+            assertNotEquals("fido says bark", notification.message());
+        } while (!notification.message().equals("tom says meow"));
+    }
+
+    @Test
+    void batchesAreUnpacked() throws Exception {
+        BlockingQueue<Notification> received = new LinkedBlockingQueue<>();
+        var ws = new WebSocketFacade(url, received::add);
+        ws.enableBatching(50, 100);
+        ws.subscribe(Topic.petType(PetType.FROG));
+
+        // Actions are handled in order, so once a frog is heard batching is on as well.
+        Notification first = null;
+        for (int attempt = 0; attempt < 50 && first == null; attempt++) {
+            server.addPet(new Pet(0, "probe", PetType.FROG));
+            first = received.poll(200, TimeUnit.MILLISECONDS);
+        }
+        assertNotNull(first, "no notification for the subscribed topic");
+
+        for (int i = 0; i < 5; i++) {
+            server.addPet(new Pet(0, "frog" + i, PetType.FROG));
+        }
+
+        var heard = new ArrayList<String>();
+        while (heard.size() < 5) {
+            Notification notification = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(notification, "missing notifications, heard " + heard);
+            assertEquals(Notification.Type.NOISE, notification.type());
+            if (!notification.message().startsWith("probe")) {
+                heard.add(notification.message());
+            }
+        }
+        assertEquals(List.of("frog0 says ribbit", "frog1 says ribbit", "frog2 says ribbit",
+                "frog3 says ribbit", "frog4 says ribbit"), heard);
+    }
+}
@@ -1,37 +1,106 @@
+import dataaccess.CachingDataAccess;
 import dataaccess.DataAccess;
+import dataaccess.LogDataAccess;
 import dataaccess.MemoryDataAccess;
 import dataaccess.MySqlDataAccess;
 import server.PetServer;
+import server.ServerConfig;
+import service.ChangeFeed;
 import service.PetService;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+
 public class ServerMain {
 
     /**
      * Starts the server on the given port. If port is 0 then a random port is used.
+     * The --virtual-threads option runs request handling on virtual threads. The MySQL store
+     * is read through a cache, sized with --cache-capacity=N and expiring after
+     * --cache-ttl=SECONDS. A capacity of 0 turns the cache off. The listing of every pet is
+     * only cached if it has no more than --cache-list-capacity=N pets, which is 10000 by default.
+     * The database's version, which tags listings, is read at most once every
+     * --cache-version-ttl-ms=N milliseconds unless this server writes.
+     * Responses of at least --gzip-min-bytes=N are gzipped at --gzip-level=N, and a level of
+     * 0 turns that off.
+     * The last --change-feed-capacity=N changes are kept for clients catching up on them.
+     * The log store keeps its files in --data-dir=PATH and snapshots them every
+     * --snapshot-mb=N megabytes.
      */
     public static void main(String[] args) {
         try {
+            var config = ServerConfig.defaults();
+            var cacheConfig = CachingDataAccess.Config.defaults();
+            int changeFeedCapacity = ChangeFeed.DEFAULT_CAPACITY;
+            var logConfig = LogDataAccess.Config.defaults(Path.of("data"));
+            var positional = new ArrayList<String>();
+            for (String arg : args) {
+                if (arg.equals("--virtual-threads")) {
+                    config = config.withVirtualThreads(true);
+                } else if (arg.startsWith("--gzip-level=")) {
+                    int level = Integer.parseInt(arg.substring("--gzip-level=".length()));
+                    config = config.withCompression(level, config.compressionMinBytes());
+                } else if (arg.startsWith("--gzip-min-bytes=")) {
+                    int minBytes = Integer.parseInt(arg.substring("--gzip-min-bytes=".length()));
+                    config = config.withCompression(config.gzipLevel(), minBytes);
+                } else if (arg.startsWith("--cache-capacity=")) {
+                    int capacity = Integer.parseInt(arg.substring("--cache-capacity=".length()));
+                    cacheConfig = new CachingDataAccess.Config(capacity, cacheConfig.ttl(), cacheConfig.listCapacity(), cacheConfig.versionTtl());
+                } else if (arg.startsWith("--cache-ttl=")) {
+                    var ttl = Duration.ofSeconds(Long.parseLong(arg.substring("--cache-ttl=".length())));
+                    cacheConfig = new CachingDataAccess.Config(cacheConfig.capacity(), ttl, cacheConfig.listCapacity(), cacheConfig.versionTtl());
+                } else if (arg.startsWith("--cache-list-capacity=")) {
+                    int listCapacity = Integer.parseInt(arg.substring("--cache-list-capacity=".length()));
+                    cacheConfig = new CachingDataAccess.Config(cacheConfig.capacity(), cacheConfig.ttl(), listCapacity, cacheConfig.versionTtl());
+                } else if (arg.startsWith("--cache-version-ttl-ms=")) {
+                    var versionTtl = Duration.ofMillis(Long.parseLong(arg.substring("--cache-version-ttl-ms=".length())));
+                    cacheConfig = new CachingDataAccess.Config(cacheConfig.capacity(), cacheConfig.ttl(), cacheConfig.listCapacity(), versionTtl);
+                } else if (arg.startsWith("--change-feed-capacity=")) {
+                    changeFeedCapacity = Integer.parseInt(arg.substring("--change-feed-capacity=".length()));
+                } else if (arg.startsWith("--data-dir=")) {
+                    var directory = Path.of(arg.substring("--data-dir=".length()));
+                    logConfig = new LogDataAccess.Config(directory, logConfig.sync(), logConfig.snapshotBytes());
+                } else if (arg.startsWith("--snapshot-mb=")) {
+                    long snapshotBytes = Long.parseLong(arg.substring("--snapshot-mb=".length())) * 1024 * 1024;
+                    logConfig = new LogDataAccess.Config(logConfig.directory(), logConfig.sync(), snapshotBytes);
+                } else {
+                    positional.add(arg);
+                }
+            }
+
             var port = 8080;
-            if (args.length >= 1) {
-                port = Integer.parseInt(args[0]);
+            if (positional.size() >= 1) {
+                port = Integer.parseInt(positional.get(0));
             }
 
             DataAccess dataAccess = new MemoryDataAccess();
-            if (args.length >= 2 && args[1].equals("sql")) {
+            if (positional.size() >= 2 && positional.get(1).equals("sql")) {
                 dataAccess = new MySqlDataAccess();
+                if (cacheConfig.capacity() > 0) {
+                    dataAccess = new CachingDataAccess(dataAccess, cacheConfig);
+                }
+            } else if (positional.size() >= 2 && positional.get(1).equals("log")) {
+                var log = new LogDataAccess(logConfig);
+                System.out.printf("Recovered %d pets from %d log records in %d ms%n", log.recovery().pets(),
+                        log.recovery().records(), log.recovery().elapsed().toMillis());
+                dataAccess = log;
             }
 
-            var service = new PetService(dataAccess);
-            var server = new PetServer(service).run(port);
+            var service = new PetService(dataAccess, new ChangeFeed(changeFeedCapacity));
+            var server = new PetServer(service, config).run(port);
             port = server.port();
-            System.out.printf("Server started on port %d with %s%n", port, dataAccess.getClass());
+            System.out.printf("Server started on port %d with %s%s%n", port, dataAccess.getClass(),
+                    config.virtualThreads() ? " on virtual threads" : "");
             return;
         } catch (Throwable ex) {
             System.out.printf("Unable to start server: %s%n", ex.getMessage());
         }
         System.out.println("""
                 Pet Server:
-                java ServerMain <port> [sql]
+                java ServerMain <port> [sql|log] [--virtual-threads] [--cache-capacity=N] [--cache-ttl=SECONDS]
+                                 [--gzip-level=0-9] [--gzip-min-bytes=N] [--change-feed-capacity=N]
+                                 [--data-dir=PATH] [--snapshot-mb=N]
                 """);
     }
 }
\ No newline at end of file
@@ -0,0 +1,256 @@
+package dataaccess;
+
+import exception.ResponseException;
+import model.Pet;
+import model.PetList;
+import model.PetQuery;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A read-through cache in front of another data access, so that read-heavy traffic is
+ * served from memory instead of querying the database on every request. Pets are cached
+ * by ID and listings page by page. The listing of every pet is only cached if it is no
+ * larger than {@link Config#listCapacity()}, and {@link #writePets} always goes to the
+ * underlying store, which can stream a table of any size.
+ * <br/>
+ * Every write goes to the underlying store first and then updates or invalidates the
+ * cache. Each write also advances a generation number, and a value loaded from the store
+ * is only cached if no write has happened since the load began, so a slow read can never
+ * put back a value that a concurrent write has just replaced. Entries also expire after
+ * the time to live, which bounds how stale a pet can get when other servers write to the
+ * same database.
+ * <br/>
+ * Listings are also tagged with the store's {@link #version()} as it was read before they
+ * were loaded, and are only served while the store still has that version. A listing is
+ * therefore never older than the version a caller read before asking for it, even when
+ * another server has changed the pets, so it is never sent with a newer listing's ETag.
+ * <br/>
+ * Reading the version is itself a query on MySQL, so it is reused for up to
+ * {@link Config#versionTtl()} and read again straight after any write made through this
+ * cache. A write made by another server is therefore seen, in the version and in cached
+ * listings, within that time, while one made through this server is seen at once.
+ * <br/>
+ * Hits take no lock. The generation is an atomic counter read without one.
+ */
+public class CachingDataAccess implements DataAccess {
+
+    /**
+     * @param capacity     the number of pets, and separately the number of pages, to keep
+     * @param ttl          how long an entry is served before it is loaded again
+     * @param listCapacity the most pets a listing of every pet may have and still be cached,
+     *                     or 0 to never cache it
+     * @param versionTtl   how long the store's version is reused before it is read again
+     */
+    public record Config(int capacity, Duration ttl, int listCapacity, Duration versionTtl) {
+        public static Config defaults() {
+            return new Config(10_000, Duration.ofSeconds(30), 10_000, Duration.ofSeconds(1));
+        }
+    }
+
+    /**
+     * Counts since the cache was created. Evictions counts entries pushed out because the
+     * cache was full. Expired entries are counted as misses.
+     */
+    public record Stats(long hits, long misses, long evictions) {
+    }
+
+    private record Listing(PetList pets, long version, long expiresAt) {
+    }
+
+    private record VersionRead(long version, long readAt, long generation) {
+    }
+
+    private final DataAccess delegate;
+    private final LongSupplier clock;
+    private final long ttlNanos;
+    private final ExpiringLruCache<Integer, Pet> pets;
+    private final ExpiringLruCache<PetQuery, Listing> pages;
+    private final int listCapacity;
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile Listing all;
+    private final long versionTtlNanos;
+    private volatile VersionRead lastVersion;
+
+    public CachingDataAccess(DataAccess delegate) {
+        this(delegate, Config.defaults());
+    }
+
+    public CachingDataAccess(DataAccess delegate, Config config) {
+        this(delegate, config, System::nanoTime);
+    }
+
+    CachingDataAccess(DataAccess delegate, Config config, LongSupplier clock) {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.ttlNanos = config.ttl().toNanos();
+        this.listCapacity = config.listCapacity();
+        this.versionTtlNanos = config.versionTtl().toNanos();
+        pets = new ExpiringLruCache<>(config.capacity(), ttlNanos);
+        pages = new ExpiringLruCache<>(config.capacity(), ttlNanos);
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), pets.evictions() + pages.evictions());
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+        delegate.setWriteListener(listener);
+    }
+
+    /**
+     * The store's version as it was read at most {@link Config#versionTtl()} ago, and not
+     * before a write made through this cache.
+     */
+    @Override
+    public long version() throws ResponseException {
+        long now = clock.getAsLong();
+        long loading = generation.get();
+        var cached = lastVersion;
+        if (cached != null && cached.generation() == loading && now - cached.readAt() < versionTtlNanos) {
+            return cached.version();
+        }
+        long version = delegate.version();
+        lastVersion = new VersionRead(version, now, loading);
+        return version;
+    }
+
+    @Override
+    public void awaitDurable() throws ResponseException {
+        delegate.awaitDurable();
+    }
+
+    @Override
+    public Pet getPet(int id) throws ResponseException {
+        Pet pet = pets.get(id, clock.getAsLong());
+        if (pet != null) {
+            hits.increment();
+            return pet;
+        }
+        misses.increment();
+        long loading = generation.get();
+        pet = delegate.getPet(id);
+        if (pet != null) {
+            pets.put(id, pet, clock.getAsLong(), generation, loading);
+        }
+        return pet;
+    }
+
+    @Override
+    public PetList listPets() throws ResponseException {
+        if (listCapacity == 0) {
+            return delegate.listPets();
+        }
+        long current = version();
+        var cached = all;
+        if (cached != null && cached.version() == current && clock.getAsLong() - cached.expiresAt() < 0) {
+            hits.increment();
+            return cached.pets();
+        }
+        misses.increment();
+
+        // The cached list is shared between callers, so none of them may change it.
+        PetList pets = PetList.unmodifiable(delegate.listPets());
+        if (pets.size() <= listCapacity) {
+            all = new Listing(pets, current, clock.getAsLong() + ttlNanos);
+        }
+        return pets;
+    }
+
+    @Override
+    public void writePets(OutputStream out) throws ResponseException {
+        delegate.writePets(out);
+    }
+
+    @Override
+    public PetList listPets(PetQuery query) throws ResponseException {
+        long current = version();
+        Listing cached = pages.get(query, clock.getAsLong());
+        if (cached != null && cached.version() == current) {
+            hits.increment();
+            return cached.pets();
+        }
+        misses.increment();
+        long loading = generation.get();
+        PetList page = delegate.listPets(query);
+        long now = clock.getAsLong();
+        pages.put(query, new Listing(page, current, now + ttlNanos), now, generation, loading);
+        return page;
+    }
+
+    @Override
+    public Pet addPet(Pet pet) throws ResponseException {
+        Pet added;
+        long written;
+        try {
+            added = delegate.addPet(pet);
+        } finally {
+            written = invalidateListings();
+        }
+        // A later write that deletes the pet moves the generation on, so the pet is not put back.
+        pets.put(added.id(), added, clock.getAsLong(), generation, written);
+        return added;
+    }
+
+    @Override
+    public PetList addPets(Collection<Pet> newPets) throws ResponseException {
+        try {
+            return delegate.addPets(newPets);
+        } finally {
+            invalidateListings();
+        }
+    }
+
+    @Override
+    public Pet deletePet(Integer id) throws ResponseException {
+        try {
+            return delegate.deletePet(id);
+        } finally {
+            invalidateListings();
+            pets.remove(id);
+        }
+    }
+
+    @Override
+    public PetList deletePets(Collection<Integer> ids) throws ResponseException {
+        try {
+            return delegate.deletePets(ids);
+        } finally {
+            invalidateListings();
+            for (Integer id : ids) {
+                pets.remove(id);
+            }
+        }
+    }
+
+    @Override
+    public void deleteAllPets() throws ResponseException {
+        try {
+            delegate.deleteAllPets();
+        } finally {
+            invalidateListings();
+            pets.clear();
+        }
+    }
+
+    /**
+     * Forgets every listing and stops loads already in progress from being cached. Writes
+     * call this after the underlying store has changed, even if the write failed part way,
+     * and before they remove any pets, so a load that began before the write cannot put a
+     * removed pet back. Returns the new generation.
+     */
+    private long invalidateListings() {
+        long current = generation.incrementAndGet();
+        all = null;
+        pages.clear();
+        return current;
+    }
+}
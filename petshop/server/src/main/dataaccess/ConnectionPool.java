@@ -0,0 +1,340 @@
+package dataaccess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of database connections. Borrowed connections are returned to the pool
+ * when they are closed, so callers keep using try-with-resource blocks exactly as they
+ * would with a connection from {@link java.sql.DriverManager}.
+ * <br/>
+ * Connections that have been idle for a while are validated before they are handed out,
+ * callers wait up to {@link Config#waitTimeout()} when every connection is in use, and a
+ * background task closes connections that stay idle past {@link Config#idleTimeout()}
+ * while keeping at least {@link Config#minSize()} open.
+ * <br/>
+ * Each physical connection keeps a {@link StatementCache}, so SQL that has been prepared
+ * once on a connection is reused by every later borrower of that connection.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    public record Config(int minSize, int maxSize, Duration idleTimeout, Duration waitTimeout,
+                         Duration validationTimeout, int statementCacheSize) {
+        public static Config defaults() {
+            return new Config(2, 10, Duration.ofMinutes(10), Duration.ofSeconds(30), Duration.ofSeconds(5), 64);
+        }
+
+        /**
+         * Reads the optional pool settings from db.properties, falling back to the defaults for any
+         * that are missing: db.pool.minSize, db.pool.maxSize, db.pool.idleTimeoutMillis,
+         * db.pool.waitTimeoutMillis, db.pool.validationTimeoutMillis, and db.pool.statementCacheSize.
+         */
+        public static Config fromProperties(Properties props) {
+            var defaults = defaults();
+            return new Config(
+                    Integer.parseInt(props.getProperty("db.pool.minSize", String.valueOf(defaults.minSize()))),
+                    Integer.parseInt(props.getProperty("db.pool.maxSize", String.valueOf(defaults.maxSize()))),
+                    millis(props, "db.pool.idleTimeoutMillis", defaults.idleTimeout()),
+                    millis(props, "db.pool.waitTimeoutMillis", defaults.waitTimeout()),
+                    millis(props, "db.pool.validationTimeoutMillis", defaults.validationTimeout()),
+                    Integer.parseInt(props.getProperty("db.pool.statementCacheSize", String.valueOf(defaults.statementCacheSize()))));
+        }
+
+        private static Duration millis(Properties props, String name, Duration defaultValue) {
+            var value = props.getProperty(name);
+            return value == null ? defaultValue : Duration.ofMillis(Long.parseLong(value));
+        }
+    }
+
+    public record Metrics(int active, int idle, int waiting, int total) {
+    }
+
+    /**
+     * Connections that were returned more recently than this are trusted without a round-trip to the database.
+     */
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final ConnectionFactory factory;
+    private final Config config;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<IdleConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService maintenance;
+    private int total = 0;
+    private int waiting = 0;
+    private boolean closed = false;
+
+    private record PhysicalConnection(Connection connection, StatementCache statements) {
+    }
+
+    private record IdleConnection(PhysicalConnection physical, long returnedAt) {
+    }
+
+    public ConnectionPool(ConnectionFactory factory, Config config) {
+        if (config.minSize() < 0 || config.maxSize() < 1 || config.minSize() > config.maxSize()) {
+            throw new IllegalArgumentException("invalid pool size: " + config.minSize() + ".." + config.maxSize());
+        }
+        this.factory = factory;
+        this.config = config;
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "connection-pool-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, Math.min(config.idleTimeout().toMillis() / 2, 30_000));
+        maintenance.scheduleWithFixedDelay(this::maintain, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting for one to be returned if the pool is at its maximum size.
+     */
+    public Connection getConnection() throws SQLException {
+        long deadline = System.nanoTime() + config.waitTimeout().toNanos();
+        while (true) {
+            IdleConnection candidate = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (idle.isEmpty() && total >= config.maxSize()) {
+                    if (closed) {
+                        throw new SQLException("connection pool is closed");
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new SQLTransientConnectionException(String.format(
+                                "timed out after %d ms waiting for a database connection", config.waitTimeout().toMillis()));
+                    }
+                    waiting++;
+                    try {
+                        available.awaitNanos(remaining);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("interrupted while waiting for a database connection", ex);
+                    } finally {
+                        waiting--;
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("connection pool is closed");
+                }
+                if (!idle.isEmpty()) {
+                    candidate = idle.pollFirst();
+                } else {
+                    total++;
+                    create = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                return wrap(createPhysical());
+            }
+            if (isUsable(candidate)) {
+                return wrap(candidate.physical());
+            }
+            discard(candidate.physical());
+        }
+    }
+
+    public Metrics metrics() {
+        lock.lock();
+        try {
+            return new Metrics(total - idle.size(), idle.size(), waiting, total);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdownNow();
+        ArrayDeque<IdleConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        toClose.forEach(c -> discard(c.physical()));
+    }
+
+    private PhysicalConnection createPhysical() throws SQLException {
+        try {
+            return new PhysicalConnection(factory.create(), new StatementCache(config.statementCacheSize()));
+        } catch (SQLException | RuntimeException ex) {
+            lock.lock();
+            try {
+                total--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw ex;
+        }
+    }
+
+    private boolean isUsable(IdleConnection candidate) {
+        if (System.nanoTime() - candidate.returnedAt() < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            return candidate.physical().connection().isValid((int) Math.max(1, config.validationTimeout().toSeconds()));
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void release(PhysicalConnection physical) {
+        boolean healthy;
+        try {
+            var connection = physical.connection();
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            healthy = !connection.isClosed();
+        } catch (SQLException ex) {
+            healthy = false;
+        }
+
+        lock.lock();
+        try {
+            if (healthy && !closed) {
+                idle.addFirst(new IdleConnection(physical, System.nanoTime()));
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        discard(physical);
+    }
+
+    private void discard(PhysicalConnection physical) {
+        physical.statements().closeAll();
+        try {
+            physical.connection().close();
+        } catch (SQLException ignored) {
+        }
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes connections that have been idle too long and then tops the pool back up to its minimum size.
+     */
+    private void maintain() {
+        long cutoff = System.nanoTime() - config.idleTimeout().toNanos();
+        var expired = new ArrayDeque<PhysicalConnection>();
+        lock.lock();
+        try {
+            // The oldest idle connections are at the end of the deque.
+            while (total - expired.size() > config.minSize() && !idle.isEmpty() && idle.peekLast().returnedAt() < cutoff) {
+                expired.add(idle.pollLast().physical());
+            }
+        } finally {
+            lock.unlock();
+        }
+        expired.forEach(this::discard);
+
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || total >= config.minSize()) {
+                    return;
+                }
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                release(createPhysical());
+            } catch (SQLException | RuntimeException ex) {
+                // The database may not be reachable yet. Try again on the next run.
+                return;
+            }
+        }
+    }
+
+    private Connection wrap(PhysicalConnection physical) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new PooledConnection(physical));
+    }
+
+    /**
+     * Forwards every call to the physical connection, except that closing it returns it to the pool
+     * and statements are prepared through the connection's statement cache.
+     */
+    private class PooledConnection implements InvocationHandler {
+        private final PhysicalConnection physical;
+        private boolean returned = false;
+
+        PooledConnection(PhysicalConnection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        release(physical);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || physical.connection().isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "PooledConnection[" + physical.connection() + "]";
+                }
+            }
+            if (returned) {
+                throw new SQLException("connection has been returned to the pool");
+            }
+            if (method.getName().equals("prepareStatement")) {
+                return physical.statements().prepare(physical.connection(), (Connection) proxy, method, args);
+            }
+            try {
+                return method.invoke(physical.connection(), args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -3,14 +3,101 @@ package dataaccess;
 import exception.ResponseException;
 import model.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
 public interface DataAccess {
+    /**
+     * Hears about each write that changed the pets. A store takes a ticket with {@link #reserve}
+     * at the point where its write takes effect, so that the tickets are in the order of the
+     * writes, and later passes the ticket to exactly one of the other methods, even if the write
+     * fails. Those calls may come in any order, and the listener puts them back in ticket order.
+     */
+    interface WriteListener {
+        long reserve();
+
+        void added(long ticket, Collection<Pet> pets);
+
+        void removed(long ticket, Collection<Pet> pets);
+
+        void cleared(long ticket);
+
+        /**
+         * Gives back a ticket whose write did not change the pets after all.
+         */
+        void cancelled(long ticket);
+    }
+
+    /**
+     * Has the store tell the listener about every write that changes the pets, before the write
+     * returns, so that replaying the calls in ticket order on a copy of the pets keeps it the
+     * same as the store. A call may wait until the writes with earlier tickets have been
+     * reported, so a store must not hold a lock that those writes need while it reports one.
+     */
+    void setWriteListener(WriteListener listener);
+
     Pet addPet(Pet pet) throws ResponseException;
 
+    /**
+     * Adds all the pets in one operation and returns them, in the same order, with their assigned IDs.
+     */
+    PetList addPets(Collection<Pet> pets) throws ResponseException;
+
+    /**
+     * Returns every pet. Implementations may share the returned list between callers, in
+     * which case it is unmodifiable.
+     */
     PetList listPets() throws ResponseException;
 
+    /**
+     * Returns one page of the pets that match the query, in ID order. Implementations must
+     * seek straight to the page rather than skipping over the pets on earlier pages, and
+     * should use an index for the type and name prefix filters.
+     */
+    PetList listPets(PetQuery query) throws ResponseException;
+
+    /**
+     * Writes every pet to out as a UTF-8 encoded JSON array. Implementations should
+     * stream the pets, or write an encoding cached between mutations, rather than
+     * building the whole response for each call.
+     */
+    default void writePets(OutputStream out) throws ResponseException {
+        try {
+            out.write(listPets().toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new ResponseException(ResponseException.Code.ServerError, String.format("Unable to write pets: %s", ex.getMessage()));
+        }
+    }
+
+    /**
+     * A number that changes whenever a pet is added or deleted. Callers that tag a listing
+     * with the version must read the version first, so the listing is never older than its tag.
+     */
+    long version() throws ResponseException;
+
     Pet getPet(int id) throws ResponseException;
 
-    void deletePet(Integer id) throws ResponseException;
+    /**
+     * Deletes the pet with the given ID and returns it, or null if there was none.
+     */
+    Pet deletePet(Integer id) throws ResponseException;
+
+    /**
+     * Deletes all the pets with the given IDs in one operation and returns the pets that were
+     * deleted, in the order of their IDs in ids. IDs that do not exist are ignored.
+     */
+    PetList deletePets(Collection<Integer> ids) throws ResponseException;
 
     void deleteAllPets() throws ResponseException;
+
+    /**
+     * Waits until every write that returned before this call is durable. A store may return
+     * from a write before it is durable, so that one flush to disk can cover the writes of
+     * many callers, as long as the write is durable once this returns. Stores whose writes
+     * are durable when they return, or are never durable, need not do anything.
+     */
+    default void awaitDurable() throws ResponseException {
+    }
 }
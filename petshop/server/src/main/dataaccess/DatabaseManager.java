@@ -16,6 +16,7 @@ public class DatabaseManager {
     private static final String user;
     private static final String password;
     private static final String connectionUrl;
+    private static final ConnectionPool pool;
 
     /*
      * Load the database information for the db.properties file.
@@ -31,8 +32,12 @@ public class DatabaseManager {
 
                 String host = props.getProperty("db.host");
                 var port = Integer.parseInt(props.getProperty("db.port"));
-                connectionUrl = String.format("jdbc:mysql://%s:%d", host, port);
+                // Server-side prepared statements are parsed once per connection and then reused
+                // through the connection pool's statement cache. Batched inserts are rewritten
+                // into multi-row INSERT statements.
+                connectionUrl = String.format("jdbc:mysql://%s:%d?useServerPrepStmts=true&rewriteBatchedStatements=true", host, port);
 
+                pool = new ConnectionPool(DatabaseManager::createConnection, ConnectionPool.Config.fromProperties(props));
             }
         } catch (Exception ex) {
             throw new RuntimeException("unable to process db.properties. " + ex.getMessage());
@@ -45,8 +50,8 @@ public class DatabaseManager {
     static void createDatabase() throws ResponseException {
         try {
             String statement = "CREATE DATABASE IF NOT EXISTS " + databaseName;
-            Connection conn = DriverManager.getConnection(connectionUrl, user, password);
-            try (PreparedStatement preparedStatement = conn.prepareStatement(statement, RETURN_GENERATED_KEYS)) {
+            try (Connection conn = DriverManager.getConnection(connectionUrl, user, password);
+                 PreparedStatement preparedStatement = conn.prepareStatement(statement, RETURN_GENERATED_KEYS)) {
                 preparedStatement.executeUpdate();
             }
         } catch (SQLException e) {
@@ -55,10 +60,10 @@ public class DatabaseManager {
     }
 
     /**
-     * Create a connection to the database and sets the catalog based upon the
-     * properties specified in db.properties. Connections to the database should
-     * be short-lived, and you must close the connection when you are done with it.
-     * The easiest way to do that is with a try-with-resource block.
+     * Borrow a connection to the database from the connection pool. The catalog is set
+     * based upon the properties specified in db.properties. Connections to the database should
+     * be short-lived, and you must close the connection when you are done with it so that it
+     * is returned to the pool. The easiest way to do that is with a try-with-resource block.
      * <br/>
      * <code>
      * try (var conn = DbInfo.getConnection(databaseName)) {
@@ -68,11 +73,22 @@ public class DatabaseManager {
      */
     static Connection getConnection() throws ResponseException {
         try {
-            Connection conn = DriverManager.getConnection(connectionUrl, user, password);
-            conn.setCatalog(databaseName);
-            return conn;
+            return pool.getConnection();
         } catch (SQLException e) {
             throw new ResponseException(ResponseException.Code.ServerError, e.getMessage());
         }
     }
+
+    /**
+     * The number of active, idle, and waiting connections in the connection pool.
+     */
+    public static ConnectionPool.Metrics poolMetrics() {
+        return pool.metrics();
+    }
+
+    private static Connection createConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(connectionUrl, user, password);
+        conn.setCatalog(databaseName);
+        return conn;
+    }
 }
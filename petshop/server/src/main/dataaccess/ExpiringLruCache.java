@@ -0,0 +1,143 @@
+package dataaccess;
+
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded map that forgets a least recently used entry once it is full, and treats
+ * entries older than the time to live as absent. Times are in nanoseconds from whatever
+ * clock the caller uses.
+ * <br/>
+ * Reads take no lock, so concurrent hits never wait for each other. A hit only marks its
+ * entry as used, and eviction gives the oldest entry a second chance if it has been used
+ * since it was last looked at, so entries that keep being read stay cached the way they
+ * would with strict LRU order. Puts, removals, and eviction share a lock.
+ */
+class ExpiringLruCache<K, V> {
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+        volatile boolean used;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    // Every key in the map, and some that have expired from it, oldest first. Only used while holding the lock.
+    private final LinkedHashSet<K> order = new LinkedHashSet<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long evictions = 0;
+
+    ExpiringLruCache(int capacity, long ttlNanos) {
+        this.capacity = capacity;
+        this.ttlNanos = ttlNanos;
+    }
+
+    /**
+     * Returns the value, or null if it is missing or has expired.
+     */
+    V get(K key, long now) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (now - entry.expiresAt >= 0) {
+            entries.remove(key, entry);
+            return null;
+        }
+        if (!entry.used) {
+            entry.used = true;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Puts the value only if the generation is still the one it was loaded at. The check is
+     * made under the same lock as {@link #remove} and {@link #clear}, so a writer that moves
+     * the generation on and then removes the key can never be followed by a put of the value
+     * it replaced.
+     */
+    void put(K key, V value, long now, AtomicLong generation, long loaded) {
+        if (capacity <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (generation.get() != loaded) {
+                return;
+            }
+            entries.put(key, new Entry<>(value, now + ttlNanos));
+            order.add(key);
+            while (order.size() > capacity) {
+                evictOne();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void remove(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+            order.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            order.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * The number of entries pushed out because the cache was full.
+     */
+    long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Forgets the oldest key, unless its entry has been used since it was last looked at, in
+     * which case the entry is moved to the back and the next oldest is tried. Must be called
+     * holding the lock.
+     */
+    private void evictOne() {
+        var oldest = order.iterator();
+        while (oldest.hasNext()) {
+            K key = oldest.next();
+            oldest.remove();
+            var entry = entries.get(key);
+            if (entry == null) {
+                // It expired, so it was already gone.
+                return;
+            }
+            if (entry.used) {
+                entry.used = false;
+                order.add(key);
+                oldest = order.iterator();
+            } else {
+                entries.remove(key);
+                evictions++;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package dataaccess;
+
+import exception.ResponseException;
+import model.Pet;
+import model.PetList;
+import model.PetQuery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * A pet store that keeps every pet in a {@link MemoryDataAccess} and makes them durable by
+ * appending each write to a log file in its directory, so it needs no database and survives
+ * a restart.
+ * <br/>
+ * A write is applied to memory and added to a buffer of records, and returns straight away.
+ * A single flusher thread writes out whatever has been buffered and forces it to disk, and
+ * {@link #awaitDurable()} waits for the flush that covers the caller's writes, so one fsync
+ * is shared by every write made while the previous one was running. Readers can see a write
+ * before it is durable, which is why callers must wait before acknowledging it. The
+ * {@link WriteListener} is told about each write as it is buffered, in log order.
+ * <br/>
+ * Once a log file grows past {@link Config#snapshotBytes()}, the flusher starts a new one
+ * and a snapshot of every pet as of that moment is written in the background, after which
+ * the older files are deleted. Opening the store maps the newest {@link PetSnapshot}, whose
+ * pets are decoded as they are read, and replays the log files written since. A record torn
+ * by a crash is cut off the end of the last file.
+ */
+public class LogDataAccess implements DataAccess, AutoCloseable {
+    private static final Pattern LOG_FILE = Pattern.compile("log-(\\d+)");
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)");
+
+    /**
+     * @param directory     where the log and snapshot files are kept
+     * @param sync          whether each flush is forced to disk, rather than left to the
+     *                      operating system, which survives a crash of the server but not of
+     *                      the machine
+     * @param snapshotBytes how large a log file may grow before a snapshot is taken
+     */
+    public record Config(Path directory, boolean sync, long snapshotBytes) {
+        public static Config defaults(Path directory) {
+            return new Config(directory, true, 64L * 1024 * 1024);
+        }
+    }
+
+    /**
+     * What was read when the store was opened, and how long it took.
+     */
+    public record Recovery(int pets, long records, Duration elapsed) {
+    }
+
+    private final MemoryDataAccess memory = new MemoryDataAccess();
+    private final Config config;
+    private final Recovery recovery;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition buffered = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Thread flusher;
+    private final ExecutorService snapshots = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "pet-log-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private LogRecords.Buffer pending = new LogRecords.Buffer(64 * 1024);
+    private LogRecords.Buffer spare = new LogRecords.Buffer(64 * 1024);
+    // Bytes of records buffered, and flushed, since the store was opened.
+    private long appended = 0;
+    private long durable = 0;
+    private ResponseException failure;
+    private boolean closed = false;
+    private volatile WriteListener listener;
+    // Only used by the flusher once the store is open.
+    private FileChannel log;
+    private long generation;
+    private long logBytes;
+
+    public LogDataAccess(Path directory) throws ResponseException {
+        this(Config.defaults(directory));
+    }
+
+    public LogDataAccess(Config config) throws ResponseException {
+        this.config = config;
+        try {
+            Files.createDirectories(config.directory());
+            recovery = recover();
+        } catch (IOException ex) {
+            throw new ResponseException(ResponseException.Code.ServerError, String.format("Unable to open the pet log: %s", ex.getMessage()));
+        }
+        flusher = new Thread(this::flushLoop, "pet-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public Recovery recovery() {
+        return recovery;
+    }
+
+    public void setWriteListener(WriteListener listener) {
+        this.listener = listener;
+    }
+
+    public Pet addPet(Pet pet) throws ResponseException {
+        lock.lock();
+        try {
+            checkOpen();
+            Pet added = memory.addPet(pet);
+            int before = pending.size();
+            pending.appendAdd(List.of(added));
+            buffered(before);
+            report((current, ticket) -> current.added(ticket, List.of(added)));
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public PetList addPets(Collection<Pet> pets) throws ResponseException {
+        lock.lock();
+        try {
+            checkOpen();
+            PetList added = memory.addPets(pets);
+            int before = pending.size();
+            pending.appendAdd(added);
+            buffered(before);
+            report((current, ticket) -> current.added(ticket, added));
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public PetList listPets() {
+        return memory.listPets();
+    }
+
+    public PetList listPets(PetQuery query) {
+        return memory.listPets(query);
+    }
+
+    public void writePets(OutputStream out) throws ResponseException {
+        memory.writePets(out);
+    }
+
+    public long version() {
+        return memory.version();
+    }
+
+    public Pet getPet(int id) {
+        return memory.getPet(id);
+    }
+
+    public Pet deletePet(Integer id) throws ResponseException {
+        PetList removed = deletePets(List.of(id));
+        return removed.isEmpty() ? null : removed.getFirst();
+    }
+
+    public PetList deletePets(Collection<Integer> ids) throws ResponseException {
+        lock.lock();
+        try {
+            checkOpen();
+            PetList removed = memory.deletePets(ids);
+            if (!removed.isEmpty()) {
+                var removedIds = new ArrayList<Integer>(removed.size());
+                for (Pet pet : removed) {
+                    removedIds.add(pet.id());
+                }
+                int before = pending.size();
+                pending.appendDelete(removedIds);
+                buffered(before);
+                report((current, ticket) -> current.removed(ticket, removed));
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void deleteAllPets() throws ResponseException {
+        lock.lock();
+        try {
+            checkOpen();
+            boolean changed = memory.size() > 0;
+            memory.deleteAllPets();
+            int before = pending.size();
+            pending.appendClear();
+            buffered(before);
+            if (changed) {
+                report(WriteListener::cleared);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void awaitDurable() throws ResponseException {
+        lock.lock();
+        try {
+            long target = appended;
+            while (durable < target && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+            if (durable < target) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes every buffered write and closes the log. Writes made after this fail.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            buffered.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+            snapshots.shutdown();
+            snapshots.awaitTermination(1, TimeUnit.MINUTES);
+            log.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void checkOpen() throws ResponseException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new ResponseException(ResponseException.Code.ServerError, "The pet log is closed");
+        }
+    }
+
+    /**
+     * Tells the listener about a write while the lock is held, with a ticket taken at the same
+     * time, so the tickets are in log order and every earlier one has already been reported.
+     */
+    private void report(ObjLongConsumer<WriteListener> report) {
+        var current = listener;
+        if (current != null) {
+            report.accept(current, current.reserve());
+        }
+    }
+
+    private void buffered(int before) {
+        appended += pending.size() - before;
+        buffered.signal();
+    }
+
+    private void flushLoop() {
+        while (true) {
+            LogRecords.Buffer batch;
+            long target;
+            PetList cut = null;
+            int cutNextId = 0;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    buffered.awaitUninterruptibly();
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                target = appended;
+                logBytes += batch.size();
+                if (logBytes >= config.snapshotBytes()) {
+                    // Everything up to here is in this batch, and everything after goes to the next log.
+                    cut = memory.listPets();
+                    cutNextId = memory.nextId();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                batch.writeTo(log);
+                if (config.sync()) {
+                    log.force(false);
+                }
+                if (cut != null) {
+                    startLog(cut, cutNextId);
+                }
+            } catch (IOException ex) {
+                lock.lock();
+                try {
+                    failure = new ResponseException(ResponseException.Code.ServerError, String.format("Unable to write the pet log: %s", ex.getMessage()));
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                spare = batch;
+                durable = target;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves on to a new log file and snapshots the pets as they were when the old one ended.
+     */
+    private void startLog(PetList pets, int nextId) throws IOException {
+        long next = generation + 1;
+        var nextLog = FileChannel.open(file("log-", next), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        log.close();
+        log = nextLog;
+        generation = next;
+        logBytes = 0;
+        snapshots.execute(() -> {
+            try {
+                PetSnapshot.write(file("snapshot-", next), pets, nextId);
+                deleteBefore(next);
+            } catch (IOException ex) {
+                // The older snapshot and logs are kept, so recovery just has more to replay.
+                System.err.printf("Unable to write pet snapshot %d: %s%n", next, ex.getMessage());
+            }
+        });
+    }
+
+    private Recovery recover() throws IOException {
+        long start = System.nanoTime();
+        var snapshotFiles = files(SNAPSHOT_FILE);
+        var logFiles = files(LOG_FILE);
+
+        long base = 0;
+        for (var entry : snapshotFiles.descendingMap().entrySet()) {
+            try {
+                memory.load(PetSnapshot.open(entry.getValue()));
+                base = entry.getKey();
+                break;
+            } catch (IOException ex) {
+                System.err.printf("Skipping pet snapshot %s: %s%n", entry.getValue(), ex.getMessage());
+            }
+        }
+
+        var replay = new ArrayList<>(logFiles.tailMap(base, true).entrySet());
+
+        var handler = new LogRecords.Handler() {
+            public void add(List<Pet> pets) {
+                memory.restore(pets);
+            }
+
+            public void delete(List<Integer> ids) {
+                memory.deletePets(ids);
+            }
+
+            public void clear() {
+                memory.deleteAllPets();
+            }
+        };
+        long records = 0;
+        generation = replay.isEmpty() ? base : replay.getLast().getKey();
+        for (int i = 0; i < replay.size(); i++) {
+            Path path = replay.get(i).getValue();
+            if (replay.get(i).getKey() != base + i) {
+                // The snapshot these logs follow on from is missing or unreadable.
+                throw new IOException("Missing pet log " + file("log-", base + i));
+            }
+            var in = ByteBuffer.allocate(Math.toIntExact(Files.size(path)));
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (in.hasRemaining() && channel.read(in) >= 0) {
+                }
+            }
+            in.flip();
+            var result = LogRecords.read(in, handler);
+            records += result.records();
+            if (in.hasRemaining() && i < replay.size() - 1) {
+                throw new IOException("Corrupt pet log " + path);
+            }
+            logBytes = result.bytes();
+        }
+
+        log = FileChannel.open(file("log-", generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Cut off a record torn by a crash, so new records follow the last complete one.
+        log.truncate(logBytes);
+        log.position(logBytes);
+        deleteBefore(base);
+        return new Recovery(memory.size(), records, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void deleteBefore(long keep) throws IOException {
+        for (Path path : files(LOG_FILE).headMap(keep).values()) {
+            Files.deleteIfExists(path);
+        }
+        for (Path path : files(SNAPSHOT_FILE).headMap(keep).values()) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private Path file(String prefix, long fileGeneration) {
+        return config.directory().resolve(prefix + fileGeneration);
+    }
+
+    /**
+     * The files in the directory whose names match, by the generation in their name.
+     */
+    private TreeMap<Long, Path> files(Pattern name) throws IOException {
+        var found = new TreeMap<Long, Path>();
+        try (var paths = Files.list(config.directory())) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                var matcher = name.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    found.put(Long.parseLong(matcher.group(1)), path);
+                }
+            }
+        }
+        return found;
+    }
+}
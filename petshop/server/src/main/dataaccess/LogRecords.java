@@ -0,0 +1,208 @@
+package dataaccess;
+
+import model.Pet;
+import model.PetType;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The record format of {@link LogDataAccess}'s log. Each record is its body's length and
+ * CRC-32C, followed by the body, whose first byte is the operation:
+ * <ul>
+ *     <li>ADD: the pet count, then each pet's ID, type ordinal (-1 for none), and UTF-8 name
+ *     length (-1 for none) followed by the name</li>
+ *     <li>DELETE: the ID count, then the IDs</li>
+ *     <li>CLEAR: nothing more</li>
+ * </ul>
+ * All numbers are big-endian ints, apart from the type ordinal, which is a byte. A record whose
+ * length runs past the end of the file, or whose checksum does not match, was torn by a crash
+ * while it was being written, and it and everything after it are ignored.
+ */
+final class LogRecords {
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+    private static final byte CLEAR = 3;
+    private static final int HEADER_BYTES = 8;
+
+    private LogRecords() {
+    }
+
+    interface Handler {
+        void add(List<Pet> pets);
+
+        void delete(List<Integer> ids);
+
+        void clear();
+    }
+
+    /**
+     * How many complete records were read, and the number of bytes they took up.
+     */
+    record ReadResult(long records, long bytes) {
+    }
+
+    /**
+     * Records waiting to be written, in a buffer that grows as needed and is reused once written.
+     */
+    static final class Buffer {
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer bytes;
+
+        Buffer(int capacity) {
+            bytes = ByteBuffer.allocate(capacity);
+        }
+
+        int size() {
+            return bytes.position();
+        }
+
+        boolean isEmpty() {
+            return bytes.position() == 0;
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            bytes.putInt(value);
+        }
+
+        void appendAdd(Collection<Pet> pets) {
+            int start = begin(ADD);
+            putInt(pets.size());
+            for (Pet pet : pets) {
+                byte[] name = pet.name() == null ? null : pet.name().getBytes(StandardCharsets.UTF_8);
+                ensure(9 + (name == null ? 0 : name.length));
+                bytes.putInt(pet.id());
+                bytes.put(pet.type() == null ? -1 : (byte) pet.type().ordinal());
+                if (name == null) {
+                    bytes.putInt(-1);
+                } else {
+                    bytes.putInt(name.length).put(name);
+                }
+            }
+            end(start);
+        }
+
+        void appendDelete(Collection<Integer> ids) {
+            int start = begin(DELETE);
+            putInt(ids.size());
+            ensure(4 * ids.size());
+            for (int id : ids) {
+                bytes.putInt(id);
+            }
+            end(start);
+        }
+
+        void appendClear() {
+            end(begin(CLEAR));
+        }
+
+        /**
+         * Writes the records to the channel at its position and empties the buffer.
+         */
+        void writeTo(FileChannel channel) throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+
+        private int begin(byte operation) {
+            ensure(HEADER_BYTES + 1);
+            int start = bytes.position();
+            bytes.position(start + HEADER_BYTES);
+            bytes.put(operation);
+            return start;
+        }
+
+        private void end(int start) {
+            int length = bytes.position() - start - HEADER_BYTES;
+            crc.reset();
+            crc.update(bytes.array(), start + HEADER_BYTES, length);
+            bytes.putInt(start, length);
+            bytes.putInt(start + 4, (int) crc.getValue());
+        }
+
+        private void ensure(int extra) {
+            if (bytes.remaining() < extra) {
+                var larger = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + extra));
+                bytes = larger.put(bytes.flip());
+            }
+        }
+    }
+
+    /**
+     * Passes each complete record from the buffer's position onwards to the handler, stopping at
+     * the first torn one.
+     */
+    static ReadResult read(ByteBuffer in, Handler handler) {
+        var crc = new CRC32C();
+        int start = in.position();
+        long records = 0;
+        while (in.remaining() >= HEADER_BYTES) {
+            int recordStart = in.position();
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length < 1 || length > in.remaining()) {
+                in.position(recordStart);
+                break;
+            }
+            var body = in.slice(in.position(), length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum || !apply(body, handler)) {
+                in.position(recordStart);
+                break;
+            }
+            in.position(in.position() + length);
+            records++;
+        }
+        return new ReadResult(records, in.position() - start);
+    }
+
+    private static boolean apply(ByteBuffer body, Handler handler) {
+        try {
+            switch (body.get()) {
+                case ADD -> {
+                    int count = body.getInt();
+                    var pets = new ArrayList<Pet>(Math.min(count, body.remaining() / 9));
+                    for (int i = 0; i < count; i++) {
+                        int id = body.getInt();
+                        byte type = body.get();
+                        int nameLength = body.getInt();
+                        String name = null;
+                        if (nameLength >= 0) {
+                            name = new String(body.array(), body.arrayOffset() + body.position(), nameLength, StandardCharsets.UTF_8);
+                            body.position(body.position() + nameLength);
+                        }
+                        pets.add(new Pet(id, name, type < 0 ? null : PetType.values()[type]));
+                    }
+                    handler.add(pets);
+                }
+                case DELETE -> {
+                    int count = body.getInt();
+                    var ids = new ArrayList<Integer>(Math.min(count, body.remaining() / 4));
+                    for (int i = 0; i < count; i++) {
+                        ids.add(body.getInt());
+                    }
+                    handler.delete(ids);
+                }
+                case CLEAR -> handler.clear();
+                default -> {
+                    return false;
+                }
+            }
+            return !body.hasRemaining();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            return false;
+        }
+    }
+}
@@ -1,34 +1,320 @@
 package dataaccess;
 
+import exception.ResponseException;
 import model.*;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
+/**
+ * In-memory pet store that is safe to share between Javalin's request threads.
+ * IDs are allocated atomically and the pets are kept in a lock-free skip list so
+ * that concurrent adds, reads, and deletes never block each other and listings
+ * come back in ID order, just like the MySQL implementation. Only deleting every pet
+ * waits for the writes in progress, so that none of them straddles it.
+ * <br/>
+ * Each write takes a {@link WriteListener} ticket at the point where it takes effect: an
+ * add before it puts its pets, so a delete of them is always later, and a delete after it
+ * has removed them. It reports the ticket once it has finished with the maps, and the
+ * listener puts the reports back in ticket order.
+ * <br/>
+ * Listing is served from a {@link PetListSnapshot} that is rebuilt only after a
+ * mutation, so read-mostly traffic shares a single list and a single JSON encoding.
+ * <br/>
+ * Paged queries are answered from secondary indexes by type and by name, so a filtered
+ * page seeks straight to its first pet instead of scanning the whole store. The indexes
+ * are updated after the primary map, and a pet found through an index is only returned
+ * if it is still the pet stored under its ID.
+ * <br/>
+ * A store recovered from disk can start from a {@link PetSnapshot}, whose pets are only
+ * decoded when they are read, so a large store is ready without first building its maps and
+ * indexes. The snapshot is never modified. Pets added or restored later go in the maps, and
+ * the IDs of snapshot pets that have since been deleted or replaced are kept in a set that
+ * hides them. Reads merge the two in ID order.
+ */
 public class MemoryDataAccess implements DataAccess {
-    private int nextId = 1;
-    final private HashMap<Integer, Pet> pets = new HashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    final private ConcurrentSkipListMap<Integer, Pet> pets = new ConcurrentSkipListMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private volatile PetListSnapshot snapshot = new PetListSnapshot(0, new PetList());
+    private final Map<PetType, ConcurrentSkipListMap<Integer, Pet>> byType = new EnumMap<>(PetType.class);
+    private final PetNameIndex byName = new PetNameIndex();
+    private volatile PetSnapshot base;
+    private final Set<Integer> hiddenFromBase = ConcurrentHashMap.newKeySet();
+    // Adds and deletes share the read lock, and deleting every pet takes the write lock.
+    private final ReentrantReadWriteLock clearLock = new ReentrantReadWriteLock();
+    private volatile WriteListener listener;
+
+    public MemoryDataAccess() {
+        for (PetType type : PetType.values()) {
+            byType.put(type, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    public void setWriteListener(WriteListener listener) {
+        this.listener = listener;
+    }
 
     public Pet addPet(Pet pet) {
-        pet = new Pet(nextId++, pet.name(), pet.type());
+        return addPets(List.of(pet)).getFirst();
+    }
 
-        pets.put(pet.id(), pet);
-        return pet;
+    public PetList addPets(Collection<Pet> newPets) {
+        var current = listener;
+        long ticket = 0;
+        var result = new PetList();
+        clearLock.readLock().lock();
+        try {
+            ticket = current == null ? 0 : current.reserve();
+            for (Pet pet : newPets) {
+                pet = new Pet(nextId.getAndIncrement(), pet.name(), pet.type());
+                pets.put(pet.id(), pet);
+                index(pet);
+                result.add(pet);
+            }
+            version.incrementAndGet();
+        } finally {
+            clearLock.readLock().unlock();
+            if (ticket != 0) {
+                current.added(ticket, result);
+            }
+        }
+        return result;
     }
 
     public PetList listPets() {
-        return new PetList(pets.values());
+        return snapshot().pets();
     }
 
+    public PetList listPets(PetQuery query) {
+        // Every name starts with an empty prefix, so that filter only skips pets with no name.
+        boolean byPrefix = query.namePrefix() != null && !query.namePrefix().isEmpty();
+        Iterator<Pet> fromBase = Collections.emptyIterator();
+        var current = base;
+        if (current != null) {
+            if (byPrefix) {
+                fromBase = current.withPrefix(query.namePrefix(), query.afterId(), query.limit());
+            } else if (query.type() != null) {
+                fromBase = current.ofType(query.type(), query.afterId());
+            } else {
+                fromBase = current.after(query.afterId());
+            }
+        }
+
+        Iterator<Pet> candidates;
+        if (byPrefix) {
+            candidates = byName.withPrefix(query.namePrefix(), query.afterId(), query.limit());
+        } else if (query.type() != null) {
+            candidates = byType.get(query.type()).tailMap(query.afterId(), false).values().iterator();
+        } else {
+            candidates = pets.tailMap(query.afterId(), false).values().iterator();
+        }
+
+        return merge(fromBase, candidates, query::matches, query.limit());
+    }
+
+    public void writePets(OutputStream out) throws ResponseException {
+        try {
+            out.write(snapshot().json());
+        } catch (IOException ex) {
+            throw new ResponseException(ResponseException.Code.ServerError, String.format("Unable to write pets: %s", ex.getMessage()));
+        }
+    }
+
+
+    public long version() {
+        return version.get();
+    }
 
     public Pet getPet(int id) {
-        return pets.get(id);
+        Pet pet = pets.get(id);
+        var current = base;
+        if (pet == null && current != null && !hiddenFromBase.contains(id)) {
+            pet = current.find(id);
+        }
+        return pet;
     }
 
-    public void deletePet(Integer id) {
-        pets.remove(id);
+    public Pet deletePet(Integer id) {
+        PetList removed = deletePets(List.of(id));
+        return removed.isEmpty() ? null : removed.getFirst();
+    }
+
+    public PetList deletePets(Collection<Integer> ids) {
+        var current = listener;
+        long ticket = 0;
+        var result = new PetList();
+        clearLock.readLock().lock();
+        try {
+            for (Integer id : ids) {
+                Pet removed = pets.remove(id);
+                if (removed != null) {
+                    unindex(removed);
+                    result.add(removed);
+                } else {
+                    Pet hidden = hideFromBase(id);
+                    if (hidden != null) {
+                        result.add(hidden);
+                    }
+                }
+            }
+            if (!result.isEmpty()) {
+                version.incrementAndGet();
+                ticket = current == null ? 0 : current.reserve();
+            }
+        } finally {
+            clearLock.readLock().unlock();
+            if (ticket != 0) {
+                current.removed(ticket, result);
+            }
+        }
+        return result;
     }
 
     public void deleteAllPets() {
-        pets.clear();
+        var current = listener;
+        long ticket = 0;
+        clearLock.writeLock().lock();
+        try {
+            boolean changed = size() > 0;
+            base = null;
+            hiddenFromBase.clear();
+            for (var entry = pets.pollFirstEntry(); entry != null; entry = pets.pollFirstEntry()) {
+                unindex(entry.getValue());
+            }
+            version.incrementAndGet();
+            if (changed && current != null) {
+                ticket = current.reserve();
+            }
+        } finally {
+            clearLock.writeLock().unlock();
+            if (ticket != 0) {
+                current.cleared(ticket);
+            }
+        }
+    }
+
+    /**
+     * Puts the pets back under the IDs they already have, as when recovering them from disk,
+     * and makes sure pets added later get higher IDs.
+     */
+    void restore(Collection<Pet> restored) {
+        int maxId = 0;
+        for (Pet pet : restored) {
+            Pet replaced = pets.put(pet.id(), pet);
+            if (replaced != null) {
+                unindex(replaced);
+            }
+            index(pet);
+            hideFromBase(pet.id());
+            maxId = Math.max(maxId, pet.id());
+        }
+        reserveIdsBelow(maxId + 1);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Starts an empty store from the snapshot's pets, which are read from it as needed.
+     */
+    void load(PetSnapshot snapshot) {
+        base = snapshot;
+        reserveIdsBelow(snapshot.nextId());
+        version.incrementAndGet();
+    }
+
+    /**
+     * The number of pets, without decoding those still only in the snapshot.
+     */
+    int size() {
+        var current = base;
+        return pets.size() + (current == null ? 0 : current.size() - hiddenFromBase.size());
+    }
+
+    /**
+     * The ID the next pet added will get.
+     */
+    int nextId() {
+        return nextId.get();
+    }
+
+    /**
+     * Makes sure pets added later get IDs of at least the given one, so that IDs of pets that
+     * were deleted before a restart are not handed out again.
+     */
+    void reserveIdsBelow(int id) {
+        nextId.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Hides the snapshot's pet with the given ID, returning it, or null if there was none to hide.
+     */
+    private Pet hideFromBase(int id) {
+        var current = base;
+        Pet pet = current == null ? null : current.find(id);
+        return pet != null && hiddenFromBase.add(id) ? pet : null;
+    }
+
+    /**
+     * Merges pets from the snapshot and from the maps, each in ID order, into a list of at most
+     * limit pets that pass the filter. Pets found through an index are only kept if they are
+     * still current.
+     */
+    private PetList merge(Iterator<Pet> fromBase, Iterator<Pet> fromMaps, Predicate<Pet> filter, int limit) {
+        var result = new PetList();
+        Pet nextBase = fromBase.hasNext() ? fromBase.next() : null;
+        Pet nextMap = fromMaps.hasNext() ? fromMaps.next() : null;
+        while (result.size() < limit && (nextBase != null || nextMap != null)) {
+            if (nextMap == null || (nextBase != null && nextBase.id() < nextMap.id())) {
+                if (filter.test(nextBase) && !hiddenFromBase.contains(nextBase.id())) {
+                    result.add(nextBase);
+                }
+                nextBase = fromBase.hasNext() ? fromBase.next() : null;
+            } else {
+                if (filter.test(nextMap) && pets.get(nextMap.id()) == nextMap) {
+                    result.add(nextMap);
+                }
+                nextMap = fromMaps.hasNext() ? fromMaps.next() : null;
+            }
+        }
+        return result;
+    }
+
+    private void index(Pet pet) {
+        if (pet.type() != null) {
+            byType.get(pet.type()).put(pet.id(), pet);
+        }
+        byName.add(pet);
+    }
+
+    private void unindex(Pet pet) {
+        if (pet.type() != null) {
+            byType.get(pet.type()).remove(pet.id());
+        }
+        byName.remove(pet);
+    }
+
+    /**
+     * Returns the snapshot for the current version, rebuilding it if a mutation has
+     * happened since it was taken. Mutations change the map before bumping the version,
+     * so a snapshot can never be cached under a version newer than its contents.
+     */
+    private PetListSnapshot snapshot() {
+        var current = snapshot;
+        long currentVersion = version.get();
+        if (current.version() != currentVersion) {
+            var currentBase = base;
+            Collection<Pet> all = currentBase == null ? pets.values()
+                    : merge(currentBase.after(0), pets.values().iterator(), pet -> true, Integer.MAX_VALUE);
+            current = new PetListSnapshot(currentVersion, all);
+            snapshot = current;
+        }
+        return current;
     }
 }
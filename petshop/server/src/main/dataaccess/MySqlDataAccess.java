@@ -1,26 +1,82 @@
 package dataaccess;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import exception.ResponseException;
 import model.*;
+import serialization.Serializer;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
 
+import static java.sql.ResultSet.CONCUR_READ_ONLY;
+import static java.sql.ResultSet.TYPE_FORWARD_ONLY;
 import static java.sql.Statement.RETURN_GENERATED_KEYS;
 import static java.sql.Types.NULL;
 
 
 public class MySqlDataAccess implements DataAccess {
 
+    /**
+     * The number of rows sent to the database in each executeBatch call.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The number of IDs in each "id IN (...)" list that deletePets sends. A batch of IDs is
+     * padded to the next of these sizes, so only this many different statements are prepared
+     * and cached, however the batches vary.
+     */
+    private static final int[] DELETE_SIZES = {1, 8, 64, 512};
+
+    private volatile WriteListener listener;
+
     public MySqlDataAccess() throws ResponseException {
         configureDatabase();
     }
 
+    public void setWriteListener(WriteListener listener) {
+        this.listener = listener;
+    }
+
     public Pet addPet(Pet pet) throws ResponseException {
+        return addPets(List.of(pet)).getFirst();
+    }
+
+    public PetList addPets(Collection<Pet> pets) throws ResponseException {
         var statement = "INSERT INTO pet (name, type, json) VALUES (?, ?, ?)";
-        String json = new Gson().toJson(pet);
-        int id = executeUpdate(statement, pet.name(), pet.type(), json);
-        return new Pet(id, pet.name(), pet.type());
+        var result = new PetList();
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(statement, RETURN_GENERATED_KEYS)) {
+                var pending = new ArrayList<Pet>(BATCH_SIZE);
+                for (Pet pet : pets) {
+                    setParams(ps, pet.name(), pet.type(), Serializer.toJson(pet));
+                    ps.addBatch();
+                    pending.add(pet);
+                    if (pending.size() == BATCH_SIZE) {
+                        insertBatch(ps, pending, result);
+                    }
+                }
+                insertBatch(ps, pending, result);
+                commit(conn, !result.isEmpty(), (current, ticket) -> current.added(ticket, result));
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new ResponseException(ResponseException.Code.ServerError, String.format("unable to update database: %s, %s", statement, e.getMessage()));
+        }
+        return result;
     }
 
     public Pet getPet(int id) throws ResponseException {
@@ -57,47 +113,269 @@ public class MySqlDataAccess implements DataAccess {
         return result;
     }
 
-    public void deletePet(Integer id) throws ResponseException {
-        var statement = "DELETE FROM pet WHERE id=?";
-        executeUpdate(statement, id);
+    /**
+     * Seeks to the page with "id > ?" instead of OFFSET, so a page costs the same no matter
+     * how deep it is. InnoDB secondary indexes end with the primary key, so INDEX(type) is
+     * read as (type, id) and a type-filtered page is a single range scan in ID order. A name
+     * prefix becomes a LIKE range on INDEX(name), which matches using the column's case- and
+     * accent-insensitive collation, so the same LIKE is repeated with the binary collation to
+     * keep only names that start with exactly the prefix, as the other stores do.
+     */
+    public PetList listPets(PetQuery query) throws ResponseException {
+        var statement = new StringBuilder("SELECT id, json FROM pet WHERE id > ?");
+        var params = new ArrayList<Object>();
+        params.add(query.afterId());
+        if (query.type() != null) {
+            statement.append(" AND type = ?");
+            params.add(query.type());
+        }
+        if (query.namePrefix() != null) {
+            statement.append(" AND name LIKE ? AND name LIKE ? COLLATE utf8mb4_bin");
+            String pattern = escapeLike(query.namePrefix()) + "%";
+            params.add(pattern);
+            params.add(pattern);
+        }
+        statement.append(" ORDER BY id LIMIT ?");
+        params.add(query.limit());
+
+        var result = new PetList();
+        try (Connection conn = DatabaseManager.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(statement.toString())) {
+                setParams(ps, params.toArray());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        result.add(readPet(rs));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new ResponseException(ResponseException.Code.ServerError, String.format("Unable to read data: %s", e.getMessage()));
+        }
+        return result;
     }
 
-    public void deleteAllPets() throws ResponseException {
-        var statement = "TRUNCATE pet";
-        executeUpdate(statement);
+    /**
+     * Streams the rows straight from a forward-only result set into the JSON array, so only
+     * one pet is in memory at a time no matter how large the table is.
+     */
+    public void writePets(OutputStream out) throws ResponseException {
+        var statement = "SELECT id, json FROM pet";
+        try (Connection conn = DatabaseManager.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(statement, TYPE_FORWARD_ONLY, CONCUR_READ_ONLY)) {
+                // Tells MySQL Connector/J to stream rows rather than read the whole result into memory.
+                ps.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    JsonWriter writer = Serializer.gson().newJsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+                    writer.beginArray();
+                    while (rs.next()) {
+                        Serializer.gson().toJson(readPet(rs), Pet.class, writer);
+                    }
+                    writer.endArray();
+                    writer.flush();
+                }
+            }
+        } catch (SQLException | IOException e) {
+            throw new ResponseException(ResponseException.Code.ServerError, String.format("Unable to read data: %s", e.getMessage()));
+        }
     }
 
-    private Pet readPet(ResultSet rs) throws SQLException {
-        var id = rs.getInt("id");
-        var json = rs.getString("json");
-        Pet pet = new Gson().fromJson(json, Pet.class);
-        return pet.setId(id);
+    public Pet deletePet(Integer id) throws ResponseException {
+        PetList removed = deletePets(List.of(id));
+        return removed.isEmpty() ? null : removed.getFirst();
     }
 
-    private int executeUpdate(String statement, Object... params) throws ResponseException {
+    /**
+     * Deletes the IDs up to 512 at a time in one transaction. Each batch's rows are read with
+     * SELECT ... FOR UPDATE before they are deleted, so the pets returned are exactly the ones
+     * this call deleted, even when another server deletes some of them at the same time.
+     */
+    public PetList deletePets(Collection<Integer> ids) throws ResponseException {
+        var result = new PetList();
         try (Connection conn = DatabaseManager.getConnection()) {
-            try (PreparedStatement ps = conn.prepareStatement(statement, RETURN_GENERATED_KEYS)) {
-                for (int i = 0; i < params.length; i++) {
-                    Object param = params[i];
-                    if (param instanceof String p) ps.setString(i + 1, p);
-                    else if (param instanceof Integer p) ps.setInt(i + 1, p);
-                    else if (param instanceof PetType p) ps.setString(i + 1, p.toString());
-                    else if (param == null) ps.setNull(i + 1, NULL);
+            conn.setAutoCommit(false);
+            try {
+                int largest = DELETE_SIZES[DELETE_SIZES.length - 1];
+                var pending = new ArrayList<Integer>(largest);
+                for (Integer id : ids) {
+                    pending.add(id);
+                    if (pending.size() == largest) {
+                        deleteBatch(conn, pending, result);
+                    }
                 }
-                ps.executeUpdate();
+                deleteBatch(conn, pending, result);
+                commit(conn, !result.isEmpty(), (current, ticket) -> current.removed(ticket, result));
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new ResponseException(ResponseException.Code.ServerError, String.format("unable to delete pets: %s", e.getMessage()));
+        }
+        return result;
+    }
 
-                ResultSet rs = ps.getGeneratedKeys();
-                if (rs.next()) {
-                    return rs.getInt(1);
+    /**
+     * Reads the version from the pet_version table, which every write that changes the pets
+     * bumps in its own transaction, so writes made by other servers sharing the database
+     * change it too.
+     */
+    public long version() throws ResponseException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT version FROM pet_version WHERE id = 1")) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getLong(1);
+                    }
                 }
+            }
+        } catch (SQLException e) {
+            throw new ResponseException(ResponseException.Code.ServerError, String.format("Unable to read data: %s", e.getMessage()));
+        }
+        throw new ResponseException(ResponseException.Code.ServerError, "Unable to read data: the pet version is missing");
+    }
 
-                return 0;
+    /**
+     * Uses DELETE rather than TRUNCATE, which commits straight away and so could not be reported
+     * in commit order. The DELETE locks the whole table until it commits, so an add either
+     * commits before it and is deleted, or waits and commits after it.
+     */
+    public void deleteAllPets() throws ResponseException {
+        var statement = "DELETE FROM pet";
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                int deleted = ps.executeUpdate();
+                commit(conn, deleted > 0, WriteListener::cleared);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
         } catch (SQLException e) {
             throw new ResponseException(ResponseException.Code.ServerError, String.format("unable to update database: %s, %s", statement, e.getMessage()));
         }
     }
 
+    /**
+     * Commits the connection's transaction and, if it changed the pets, bumps the version in it
+     * and reports it to the listener. The bump is the last statement, so concurrent writes only
+     * wait for each other's version row lock while they commit. The listener's ticket is taken
+     * while that row lock is held, so the tickets of this server's writes are in the order they
+     * commit, and no Java lock is held during the commit, so InnoDB can flush concurrent commits
+     * together. A ticket whose commit fails is cancelled.
+     */
+    private void commit(Connection conn, boolean changed, ObjLongConsumer<WriteListener> report) throws SQLException {
+        var current = changed ? listener : null;
+        long ticket = 0;
+        if (changed) {
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE pet_version SET version = version + 1 WHERE id = 1")) {
+                ps.executeUpdate();
+            }
+            ticket = current == null ? 0 : current.reserve();
+        }
+        boolean committed = false;
+        try {
+            conn.commit();
+            committed = true;
+        } finally {
+            if (ticket != 0) {
+                if (committed) {
+                    report.accept(current, ticket);
+                } else {
+                    current.cancelled(ticket);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a row selected as "id, json". Columns are read by position to avoid a name lookup per row.
+     */
+    private Pet readPet(ResultSet rs) throws SQLException {
+        var id = rs.getInt(1);
+        var json = rs.getString(2);
+        Pet pet = Serializer.fromJson(json, Pet.class);
+        return pet.setId(id);
+    }
+
+    /**
+     * Executes the batched inserts and pairs each pending pet with its generated ID.
+     */
+    private void insertBatch(PreparedStatement ps, List<Pet> pending, PetList result) throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        ps.executeBatch();
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            for (Pet pet : pending) {
+                if (!rs.next()) {
+                    throw new SQLException("missing generated key for " + pet.name());
+                }
+                result.add(pet.setId(rs.getInt(1)));
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Deletes the pending IDs and adds the pets that had them to result, in the order of their IDs.
+     * The IDs are padded to one of the DELETE_SIZES by repeating the last one.
+     */
+    private void deleteBatch(Connection conn, List<Integer> pending, PetList result) throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int size = 0;
+        while (DELETE_SIZES[size] < pending.size()) {
+            size++;
+        }
+        var params = new Object[DELETE_SIZES[size]];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = pending.get(Math.min(i, pending.size() - 1));
+        }
+        String in = String.join(",", Collections.nCopies(params.length, "?"));
+        var found = new HashMap<Integer, Pet>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id, json FROM pet WHERE id IN (" + in + ") FOR UPDATE")) {
+            setParams(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Pet pet = readPet(rs);
+                    found.put(pet.id(), pet);
+                }
+            }
+        }
+        if (!found.isEmpty()) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM pet WHERE id IN (" + in + ")")) {
+                setParams(ps, params);
+                ps.executeUpdate();
+            }
+        }
+        for (Integer id : pending) {
+            // Removing it means an ID listed twice is only returned once.
+            Pet pet = found.remove(id);
+            if (pet != null) {
+                result.add(pet);
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Escapes the LIKE wildcards so a name prefix only matches literally.
+     */
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private void setParams(PreparedStatement ps, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            Object param = params[i];
+            if (param instanceof String p) ps.setString(i + 1, p);
+            else if (param instanceof Integer p) ps.setInt(i + 1, p);
+            else if (param instanceof PetType p) ps.setString(i + 1, p.toString());
+            else if (param == null) ps.setNull(i + 1, NULL);
+        }
+    }
+
     private final String[] createStatements = {
             """
             CREATE TABLE IF NOT EXISTS  pet (
@@ -109,7 +387,15 @@ public class MySqlDataAccess implements DataAccess {
               INDEX(type),
               INDEX(name)
             ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
+            """,
             """
+            CREATE TABLE IF NOT EXISTS pet_version (
+              `id` int NOT NULL,
+              `version` bigint NOT NULL,
+              PRIMARY KEY (`id`)
+            ) ENGINE=InnoDB
+            """,
+            "INSERT IGNORE INTO pet_version (id, version) VALUES (1, 0)"
     };
 
 
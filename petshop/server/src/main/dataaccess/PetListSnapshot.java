@@ -0,0 +1,43 @@
+package dataaccess;
+
+import model.Pet;
+import model.PetList;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * An immutable copy of every pet in a store at a particular version. A snapshot is
+ * shared by all readers until the next mutation, so the list and its serialized JSON
+ * are only built once per version. The list throws if a reader tries to modify it.
+ */
+public class PetListSnapshot {
+    private final long version;
+    private final PetList pets;
+    private volatile byte[] json;
+
+    public PetListSnapshot(long version, Collection<Pet> pets) {
+        this.version = version;
+        this.pets = PetList.unmodifiable(pets);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public PetList pets() {
+        return pets;
+    }
+
+    /**
+     * The UTF-8 encoded JSON array of the pets. Computed on first use and then cached.
+     */
+    public byte[] json() {
+        var result = json;
+        if (result == null) {
+            result = pets.toString().getBytes(StandardCharsets.UTF_8);
+            json = result;
+        }
+        return result;
+    }
+}
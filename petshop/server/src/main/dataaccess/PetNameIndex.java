@@ -0,0 +1,118 @@
+package dataaccess;
+
+import model.Pet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary index of pets by name. Each pet is filed, in ID order, under every prefix of its
+ * name up to {@link #BUCKET_PREFIX} characters, so a page of pets whose names start with a
+ * short prefix is a seek into that prefix's bucket plus one step per pet, however many
+ * distinct names match.
+ * <br/>
+ * Longer prefixes have no bucket of their own. Pets are also ordered by (name, id), where
+ * each name's pets are a run in ID order. When no more names match than the page can hold,
+ * the page merges those runs. Otherwise it walks the bucket of the prefix's first characters,
+ * which holds every match along with pets the caller has to skip.
+ */
+class PetNameIndex {
+    static final int BUCKET_PREFIX = 4;
+
+    private final ConcurrentSkipListMap<Key, Pet> entries = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, Pet>> buckets = new ConcurrentHashMap<>();
+
+    private record Key(String name, int id) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int result = name.compareTo(other.name);
+            return result != 0 ? result : Integer.compare(id, other.id);
+        }
+    }
+
+    void add(Pet pet) {
+        entries.put(key(pet), pet);
+        if (pet.name() != null) {
+            for (int length = 1; length <= Math.min(pet.name().length(), BUCKET_PREFIX); length++) {
+                buckets.computeIfAbsent(pet.name().substring(0, length), prefix -> new ConcurrentSkipListMap<>())
+                        .put(pet.id(), pet);
+            }
+        }
+    }
+
+    void remove(Pet pet) {
+        entries.remove(key(pet));
+        if (pet.name() != null) {
+            for (int length = 1; length <= Math.min(pet.name().length(), BUCKET_PREFIX); length++) {
+                var bucket = buckets.get(pet.name().substring(0, length));
+                if (bucket != null) {
+                    bucket.remove(pet.id(), pet);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns, in ID order, candidates for a page of at most limit pets whose names start with
+     * the prefix and whose IDs are greater than afterId. Every such pet is among them, but so
+     * may be pets whose names don't match, which the caller must skip. The prefix must not be
+     * empty.
+     */
+    Iterator<Pet> withPrefix(String prefix, int afterId, int limit) {
+        if (prefix.length() > BUCKET_PREFIX) {
+            var runs = runs(prefix, afterId, limit);
+            if (runs != null) {
+                return merge(runs);
+            }
+        }
+        var bucket = buckets.get(prefix.substring(0, Math.min(prefix.length(), BUCKET_PREFIX)));
+        return bucket == null ? Collections.emptyIterator() : bucket.tailMap(afterId, false).values().iterator();
+    }
+
+    /**
+     * The first entry after afterId of each name that starts with the prefix, or null if more
+     * than limit names do.
+     */
+    private PriorityQueue<Map.Entry<Key, Pet>> runs(String prefix, int afterId, int limit) {
+        var runs = new PriorityQueue<Map.Entry<Key, Pet>>(Comparator.comparingInt(e -> e.getKey().id()));
+        int names = 0;
+        var entry = entries.ceilingEntry(new Key(prefix, Integer.MIN_VALUE));
+        while (entry != null && entry.getKey().name().startsWith(prefix)) {
+            if (++names > limit) {
+                return null;
+            }
+            String name = entry.getKey().name();
+            var first = entries.higherEntry(new Key(name, afterId));
+            if (first != null && first.getKey().name().equals(name)) {
+                runs.add(first);
+            }
+            entry = entries.higherEntry(new Key(name, Integer.MAX_VALUE));
+        }
+        return runs;
+    }
+
+    private Iterator<Pet> merge(PriorityQueue<Map.Entry<Key, Pet>> runs) {
+        return new Iterator<>() {
+            public boolean hasNext() {
+                return !runs.isEmpty();
+            }
+
+            public Pet next() {
+                var current = runs.poll();
+                if (current == null) {
+                    throw new NoSuchElementException();
+                }
+                var following = entries.higherEntry(current.getKey());
+                if (following != null && following.getKey().name().equals(current.getKey().name())) {
+                    runs.add(following);
+                }
+                return current.getValue();
+            }
+        };
+    }
+
+    private static Key key(Pet pet) {
+        return new Key(pet.name() == null ? "" : pet.name(), pet.id());
+    }
+}
@@ -0,0 +1,477 @@
+package dataaccess;
+
+import model.Pet;
+import model.PetType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.CRC32C;
+
+/**
+ * A compact binary file of every pet in a store. The file is mapped into memory rather than
+ * read, and pets are only decoded when they are asked for, so opening a snapshot of millions
+ * of pets takes little more time than opening an empty one.
+ * <br/>
+ * After a fixed-size header comes a fixed-width record for each pet, in ID order, holding its
+ * ID, the index of its name in a string table, and its type's ordinal. Each distinct name is
+ * stored once, and the table is sorted, so the names with a prefix are a range of it. Arrays
+ * of record numbers ordered by type, by name, and by each name prefix of up to
+ * {@link PetNameIndex#BUCKET_PREFIX} characters, each then by ID, let a filtered page seek
+ * straight to its first pet the way {@link MemoryDataAccess}'s indexes do.
+ * A checksum of everything after the header is checked when the snapshot is opened.
+ * <br/>
+ * A snapshot is written to a temporary file that then replaces the old one, so a crash part
+ * way through leaves the old snapshot rather than half of the new one.
+ */
+public final class PetSnapshot {
+    private static final int MAGIC = 0x50455453;
+    private static final int FORMAT = 2;
+    private static final int PREFIXES = PetNameIndex.BUCKET_PREFIX;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = 12;
+    private static final PetType[] TYPES = PetType.values();
+
+    private final ByteBuffer map;
+    private final int size;
+    private final int nextId;
+    private final int names;
+    // Where each section of the file starts.
+    private final int records;
+    private final int byType;
+    private final int typeStarts;
+    private final int byName;
+    private final int nameStarts;
+    // For each prefix length, the records ordered by prefix, and where each prefix's run starts.
+    private final int[] byPrefix = new int[PREFIXES];
+    private final int[] prefixStarts = new int[PREFIXES];
+    private final int nameOffsets;
+    private final int nameBytes;
+    // Names decoded so far. Strings are immutable, so a racing decode is harmless.
+    private final String[] decodedNames;
+
+    private PetSnapshot(ByteBuffer map, int size, int nextId, int names, int named) {
+        this.map = map;
+        this.size = size;
+        this.nextId = nextId;
+        this.names = names;
+        records = HEADER_BYTES;
+        byType = records + size * RECORD_BYTES;
+        typeStarts = byType + size * 4;
+        byName = typeStarts + (TYPES.length + 2) * 4;
+        nameStarts = byName + named * 4;
+        int prefixCounts = nameStarts + (names + 1) * 4;
+        int section = prefixCounts + PREFIXES * 4;
+        for (int length = 0; length < PREFIXES; length++) {
+            byPrefix[length] = section;
+            prefixStarts[length] = section + map.getInt(prefixCounts + length * 4) * 4;
+            section = prefixStarts[length] + (names + 1) * 4;
+        }
+        nameOffsets = section;
+        nameBytes = nameOffsets + (names + 1) * 4;
+        decodedNames = new String[names];
+    }
+
+    /**
+     * Maps the snapshot file into memory and checks that it is complete.
+     */
+    public static PetSnapshot open(Path path) throws IOException {
+        ByteBuffer map;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a pet snapshot: " + path);
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (map.getInt(0) != MAGIC || map.getInt(4) != FORMAT) {
+            throw new IOException("Not a pet snapshot: " + path);
+        }
+        int size = map.getInt(8);
+        int names = map.getInt(16);
+        int named = map.getInt(20);
+        long prefixCounts = HEADER_BYTES + size * (RECORD_BYTES + 4L) + (TYPES.length + 2) * 4L + named * 4L + (names + 1) * 4L;
+        if (size < 0 || names < 0 || named < 0 || prefixCounts + PREFIXES * 4L > map.capacity()) {
+            throw new IOException("Incomplete pet snapshot: " + path);
+        }
+        long nameBytes = prefixCounts + PREFIXES * 4L + (names + 1) * 4L;
+        for (int length = 0; length < PREFIXES; length++) {
+            int count = map.getInt((int) prefixCounts + length * 4);
+            if (count < 0) {
+                throw new IOException("Corrupt pet snapshot: " + path);
+            }
+            nameBytes += (count + names + 1) * 4L;
+        }
+        if (nameBytes > map.capacity() || nameBytes + map.getInt((int) nameBytes - 4) != map.capacity()) {
+            throw new IOException("Incomplete pet snapshot: " + path);
+        }
+        var crc = new CRC32C();
+        crc.update(map.slice(HEADER_BYTES, map.capacity() - HEADER_BYTES));
+        if ((int) crc.getValue() != map.getInt(24)) {
+            throw new IOException("Corrupt pet snapshot: " + path);
+        }
+        return new PetSnapshot(map, size, map.getInt(12), names, named);
+    }
+
+    /**
+     * Writes the pets, which must be in ID order, and the ID the next pet added will get.
+     */
+    public static void write(Path path, Collection<Pet> pets, int nextId) throws IOException {
+        Pet[] sorted = pets.toArray(new Pet[0]);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i - 1].id() >= sorted[i].id()) {
+                throw new IllegalArgumentException("Pets must be in ID order");
+            }
+        }
+
+        var nameSet = new HashSet<String>();
+        for (Pet pet : sorted) {
+            if (pet.name() != null) {
+                nameSet.add(pet.name());
+            }
+        }
+        String[] nameTable = nameSet.toArray(new String[0]);
+        Arrays.sort(nameTable);
+        var nameIndexes = new HashMap<String, Integer>(nameTable.length * 2);
+        for (int i = 0; i < nameTable.length; i++) {
+            nameIndexes.put(nameTable[i], i);
+        }
+        int[] nameRefs = new int[sorted.length];
+        int[] typeRefs = new int[sorted.length];
+        int named = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            nameRefs[i] = sorted[i].name() == null ? -1 : nameIndexes.get(sorted[i].name());
+            typeRefs[i] = sorted[i].type() == null ? TYPES.length : sorted[i].type().ordinal();
+            named += nameRefs[i] < 0 ? 0 : 1;
+        }
+        // Counting sorts keep each type's and each name's pets in ID order.
+        int[] typeStarts = starts(typeRefs, TYPES.length + 1);
+        int[] byType = order(typeRefs, typeStarts);
+        int[] nameStarts = starts(nameRefs, nameTable.length);
+        int[] byName = order(nameRefs, nameStarts);
+        // Names sharing a prefix are neighbours in the sorted table, so each prefix is keyed by
+        // its first name. Names shorter than the prefix length are left out.
+        int[][] prefixStarts = new int[PREFIXES][];
+        int[][] byPrefix = new int[PREFIXES][];
+        long prefixEntries = 0;
+        for (int length = 1; length <= PREFIXES; length++) {
+            int[] keyOfName = new int[nameTable.length];
+            for (int name = 0; name < nameTable.length; name++) {
+                if (nameTable[name].length() < length) {
+                    keyOfName[name] = -1;
+                } else if (name > 0 && keyOfName[name - 1] >= 0
+                        && nameTable[name].regionMatches(0, nameTable[name - 1], 0, length)) {
+                    keyOfName[name] = keyOfName[name - 1];
+                } else {
+                    keyOfName[name] = name;
+                }
+            }
+            int[] keys = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                keys[i] = nameRefs[i] < 0 ? -1 : keyOfName[nameRefs[i]];
+            }
+            prefixStarts[length - 1] = starts(keys, nameTable.length);
+            byPrefix[length - 1] = order(keys, prefixStarts[length - 1]);
+            prefixEntries += byPrefix[length - 1].length + nameTable.length + 1;
+        }
+
+        byte[][] encodedNames = new byte[nameTable.length][];
+        long nameLength = 0;
+        for (int i = 0; i < nameTable.length; i++) {
+            encodedNames[i] = nameTable[i].getBytes(StandardCharsets.UTF_8);
+            nameLength += encodedNames[i].length;
+        }
+        long length = HEADER_BYTES + (long) sorted.length * (RECORD_BYTES + 4) + (TYPES.length + 2) * 4L
+                + named * 4L + (nameTable.length + 1) * 8L + PREFIXES * 4L + prefixEntries * 4 + nameLength;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Too many pets for one snapshot");
+        }
+
+        var out = ByteBuffer.allocate((int) length);
+        out.putInt(MAGIC).putInt(FORMAT).putInt(sorted.length).putInt(nextId)
+                .putInt(nameTable.length).putInt(named).putInt(0).putInt(0);
+        for (int i = 0; i < sorted.length; i++) {
+            out.putInt(sorted[i].id()).putInt(nameRefs[i]).put((byte) (typeRefs[i] == TYPES.length ? -1 : typeRefs[i]));
+            out.put((byte) 0).put((byte) 0).put((byte) 0);
+        }
+        for (int record : byType) {
+            out.putInt(record);
+        }
+        for (int start : typeStarts) {
+            out.putInt(start);
+        }
+        for (int record : byName) {
+            out.putInt(record);
+        }
+        for (int start : nameStarts) {
+            out.putInt(start);
+        }
+        for (int[] records : byPrefix) {
+            out.putInt(records.length);
+        }
+        for (int prefix = 0; prefix < PREFIXES; prefix++) {
+            for (int record : byPrefix[prefix]) {
+                out.putInt(record);
+            }
+            for (int start : prefixStarts[prefix]) {
+                out.putInt(start);
+            }
+        }
+        int offset = 0;
+        for (byte[] name : encodedNames) {
+            out.putInt(offset);
+            offset += name.length;
+        }
+        out.putInt(offset);
+        for (byte[] name : encodedNames) {
+            out.put(name);
+        }
+        var crc = new CRC32C();
+        crc.update(out.array(), HEADER_BYTES, out.capacity() - HEADER_BYTES);
+        out.putInt(24, (int) crc.getValue());
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int nextId() {
+        return nextId;
+    }
+
+    /**
+     * The pet with the given ID, or null if it is not in the snapshot.
+     */
+    public Pet find(int id) {
+        int record = firstAfter(this::id, 0, size, id - 1);
+        return record < size && id(record) == id ? pet(record) : null;
+    }
+
+    public boolean contains(int id) {
+        int record = firstAfter(this::id, 0, size, id - 1);
+        return record < size && id(record) == id;
+    }
+
+    /**
+     * The pets with an ID greater than afterId, in ID order.
+     */
+    public Iterator<Pet> after(int afterId) {
+        return new Run(IntUnaryOperator.identity(), firstAfter(this::id, 0, size, afterId), size);
+    }
+
+    /**
+     * The pets of the given type with an ID greater than afterId, in ID order.
+     */
+    public Iterator<Pet> ofType(PetType type, int afterId) {
+        IntUnaryOperator record = position -> map.getInt(byType + position * 4);
+        int from = map.getInt(typeStarts + type.ordinal() * 4);
+        int to = map.getInt(typeStarts + (type.ordinal() + 1) * 4);
+        return new Run(record, firstAfter(position -> id(record.applyAsInt(position)), from, to, afterId), to);
+    }
+
+    /**
+     * Candidates, in ID order, for a page of at most limit pets whose names start with the
+     * prefix and whose IDs are greater than afterId, chosen the way {@link PetNameIndex} does.
+     * Every such pet is among them, but so may be pets the caller has to skip.
+     */
+    public Iterator<Pet> withPrefix(String prefix, int afterId, int limit) {
+        if (prefix.isEmpty()) {
+            return after(afterId);
+        }
+        int first = firstName(index -> name(index).compareTo(prefix) >= 0, 0);
+        int last = firstName(index -> !name(index).startsWith(prefix), first);
+        if (prefix.length() <= PREFIXES) {
+            return prefixRun(prefix.length(), first, last, afterId);
+        }
+        if (last - first <= limit) {
+            return mergeNames(first, last, afterId);
+        }
+        String bucket = prefix.substring(0, PREFIXES);
+        first = firstName(index -> name(index).compareTo(bucket) >= 0, 0);
+        last = firstName(index -> !name(index).startsWith(bucket), first);
+        return prefixRun(PREFIXES, first, last, afterId);
+    }
+
+    /**
+     * The pets after afterId whose names are in [first, last), which all share a prefix of the
+     * given length.
+     */
+    private Iterator<Pet> prefixRun(int length, int first, int last, int afterId) {
+        if (first == last) {
+            return Collections.emptyIterator();
+        }
+        IntUnaryOperator record = position -> map.getInt(byPrefix[length - 1] + position * 4);
+        int from = map.getInt(prefixStarts[length - 1] + first * 4);
+        int to = map.getInt(prefixStarts[length - 1] + last * 4);
+        return new Run(record, firstAfter(position -> id(record.applyAsInt(position)), from, to, afterId), to);
+    }
+
+    /**
+     * Merges the runs of the names in [first, last), each of which is in ID order.
+     */
+    private Iterator<Pet> mergeNames(int first, int last, int afterId) {
+        IntUnaryOperator record = position -> map.getInt(byName + position * 4);
+        var runs = new PriorityQueue<Run>(Comparator.comparingInt(Run::peekId));
+        for (int name = first; name < last; name++) {
+            int from = map.getInt(nameStarts + name * 4);
+            int to = map.getInt(nameStarts + (name + 1) * 4);
+            var run = new Run(record, firstAfter(position -> id(record.applyAsInt(position)), from, to, afterId), to);
+            if (run.hasNext()) {
+                runs.add(run);
+            }
+        }
+
+        return new Iterator<>() {
+            public boolean hasNext() {
+                return !runs.isEmpty();
+            }
+
+            public Pet next() {
+                var run = runs.poll();
+                if (run == null) {
+                    throw new NoSuchElementException();
+                }
+                Pet pet = run.next();
+                if (run.hasNext()) {
+                    runs.add(run);
+                }
+                return pet;
+            }
+        };
+    }
+
+    /**
+     * Decodes the pets at positions [from, to) of an array of record numbers.
+     */
+    private class Run implements Iterator<Pet> {
+        private final IntUnaryOperator record;
+        private final int to;
+        private int position;
+
+        Run(IntUnaryOperator record, int from, int to) {
+            this.record = record;
+            this.position = from;
+            this.to = to;
+        }
+
+        int peekId() {
+            return id(record.applyAsInt(position));
+        }
+
+        public boolean hasNext() {
+            return position < to;
+        }
+
+        public Pet next() {
+            if (position >= to) {
+                throw new NoSuchElementException();
+            }
+            return pet(record.applyAsInt(position++));
+        }
+    }
+
+    private int id(int record) {
+        return map.getInt(records + record * RECORD_BYTES);
+    }
+
+    private Pet pet(int record) {
+        int at = records + record * RECORD_BYTES;
+        int name = map.getInt(at + 4);
+        byte type = map.get(at + 8);
+        return new Pet(map.getInt(at), name < 0 ? null : name(name), type < 0 ? null : TYPES[type]);
+    }
+
+    private String name(int index) {
+        String name = decodedNames[index];
+        if (name == null) {
+            int offset = nameOffset(index);
+            var bytes = new byte[nameOffset(index + 1) - offset];
+            map.get(nameBytes + offset, bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+            decodedNames[index] = name;
+        }
+        return name;
+    }
+
+    private int nameOffset(int index) {
+        return map.getInt(nameOffsets + index * 4);
+    }
+
+    /**
+     * The first position in [from, to) whose ID is greater than afterId, given the IDs there are
+     * in order, or to if there is none.
+     */
+    private static int firstAfter(IntUnaryOperator idAt, int from, int to, int afterId) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (idAt.applyAsInt(middle) > afterId) {
+                to = middle;
+            } else {
+                from = middle + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * The first name index from from onwards that passes the test, given that the names that
+     * pass it all come after the ones that do not.
+     */
+    private int firstName(IntPredicate test, int from) {
+        int to = names;
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (test.test(middle)) {
+                to = middle;
+            } else {
+                from = middle + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Where each key's run starts in the array of records ordered by key, followed by the
+     * end of the last run. Negative keys are left out.
+     */
+    private static int[] starts(int[] keys, int keyCount) {
+        int[] starts = new int[keyCount + 1];
+        for (int key : keys) {
+            if (key >= 0) {
+                starts[key + 1]++;
+            }
+        }
+        for (int key = 0; key < keyCount; key++) {
+            starts[key + 1] += starts[key];
+        }
+        return starts;
+    }
+
+    private static int[] order(int[] keys, int[] starts) {
+        int[] next = Arrays.copyOf(starts, starts.length - 1);
+        int[] ordered = new int[starts[starts.length - 1]];
+        for (int record = 0; record < keys.length; record++) {
+            if (keys[record] >= 0) {
+                ordered[next[keys[record]]++] = record;
+            }
+        }
+        return ordered;
+    }
+}
@@ -0,0 +1,165 @@
+package dataaccess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The prepared statements of one pooled connection, keyed by the arguments they were
+ * prepared with (the SQL plus any flags such as RETURN_GENERATED_KEYS). Closing a cached
+ * statement only clears its parameters, so the next borrower that prepares the same SQL
+ * gets it back without another round-trip to the database. The least recently used
+ * statements are closed once the cache is full.
+ * <br/>
+ * A cache belongs to a single physical connection, which only one borrower uses at a
+ * time, so it needs no locking of its own.
+ */
+class StatementCache {
+    private final int capacity;
+    private final LinkedHashMap<List<Object>, CachedStatement> statements;
+
+    StatementCache(int capacity) {
+        this.capacity = capacity;
+        statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedStatement> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Handles one of the Connection.prepareStatement overloads for the given borrower.
+     */
+    PreparedStatement prepare(Connection physical, Connection borrower, Method method, Object[] args) throws Throwable {
+        if (capacity <= 0 || !isCacheable(args)) {
+            return (PreparedStatement) invoke(method, physical, args);
+        }
+
+        var key = List.of(args);
+        var cached = statements.get(key);
+        if (cached != null && cached.inUse) {
+            // The same SQL is already open for this borrower, so hand out an uncached statement.
+            return (PreparedStatement) invoke(method, physical, args);
+        }
+        if (cached == null || cached.statement.isClosed()) {
+            cached = new CachedStatement((PreparedStatement) invoke(method, physical, args));
+            statements.put(key, cached);
+        }
+        return cached.checkout(borrower);
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    void closeAll() {
+        for (var cached : new ArrayList<>(statements.values())) {
+            cached.evict();
+        }
+        statements.clear();
+    }
+
+    private static boolean isCacheable(Object[] args) {
+        for (Object arg : args) {
+            if (!(arg instanceof String || arg instanceof Integer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static class CachedStatement implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private Connection borrower;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        PreparedStatement checkout(Connection borrower) {
+            this.borrower = borrower;
+            inUse = true;
+            return proxy;
+        }
+
+        /**
+         * Closes the real statement now, or as soon as its current borrower is done with it.
+         */
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (inUse) {
+                        inUse = false;
+                        if (evicted) {
+                            closeQuietly();
+                        } else {
+                            statement.clearParameters();
+                            statement.clearBatch();
+                        }
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return !inUse || statement.isClosed();
+                }
+                case "getConnection" -> {
+                    return borrower;
+                }
+                case "equals" -> {
+                    return self == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(self);
+                }
+                case "toString" -> {
+                    return "CachedStatement[" + statement + "]";
+                }
+            }
+            if (!inUse) {
+                throw new SQLException("statement has been closed");
+            }
+            return StatementCache.invoke(method, statement, args);
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
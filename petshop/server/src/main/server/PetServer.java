@@ -1,33 +1,74 @@
 package server;
 
-import com.google.gson.Gson;
 import dataaccess.MemoryDataAccess;
 import exception.ResponseException;
 import model.Pet;
+import model.PetChange;
+import model.PetChanges;
+import model.PetList;
+import model.PetQuery;
+import model.PetType;
+import serialization.BinaryCodec;
+import serialization.Serializer;
 import io.javalin.Javalin;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import server.websocket.ConnectionManager;
 import server.websocket.WebSocketHandler;
 import service.PetService;
+import webSocketMessages.Topic;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 public class PetServer {
+    private static final List<String> PAGE_PARAMS = List.of("limit", "after", "type", "name");
+
     private final PetService service;
     private final WebSocketHandler webSocketHandler;
+    private final Consumer<List<PetChange>> changeListener;
     private final Javalin httpHandler;
+    // Versions restart when the server does, so the tags carry a per-server prefix as well.
+    private final String etagPrefix = Long.toHexString(ThreadLocalRandom.current().nextLong());
 
     public PetServer() {
         this(new PetService(new MemoryDataAccess()));
     }
 
     public PetServer(PetService service) {
+        this(service, ServerConfig.defaults());
+    }
+
+    public PetServer(PetService service, ServerConfig serverConfig) {
         this.service = service;
 
-        webSocketHandler = new WebSocketHandler();
+        webSocketHandler = new WebSocketHandler(new ConnectionManager(), service.changes()::lastSequence);
+        changeListener = webSocketHandler::publishChanges;
+        service.changes().addListener(changeListener);
 
-        httpHandler = Javalin.create(config -> config.staticFiles.add("public"))
+        httpHandler = Javalin.create(config -> {
+                    config.staticFiles.add("public");
+                    if (serverConfig.virtualThreads()) {
+                        config.jetty.threadPool = virtualThreadPool();
+                    }
+                    config.http.customCompression(compression(serverConfig));
+                })
                 .post("/pet", this::addPet)
                 .get("/pet", this::listPets)
+                .get("/pet/{id}", this::getPet)
+                .get("/changes", this::listChanges)
                 .delete("/pet/{id}", this::deletePet)
                 .delete("/pet", this::deleteAllPets)
+                .post("/pets:batch", this::addPets)
+                .delete("/pets:batch", this::deletePets)
                 .exception(ResponseException.class, this::exceptionHandler)
                 .ws("/ws", ws -> {
                     ws.onConnect(webSocketHandler);
@@ -36,6 +77,32 @@ public class PetServer {
                 });
     }
 
+    /**
+     * Jetty's usual pool, except that handlers which may block run on virtual threads. The
+     * acceptor and selector loops stay on the pool's platform threads. Javalin's own
+     * useVirtualThreads option would move those onto virtual threads as well, where their
+     * blocking selects hold up carrier threads.
+     */
+    private static QueuedThreadPool virtualThreadPool() {
+        var pool = new QueuedThreadPool(250, 8, 60_000);
+        pool.setName("JettyServerThreadPool");
+        pool.setVirtualThreadsExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("pet-request-", 0).factory()));
+        return pool;
+    }
+
+    /**
+     * Gzips responses for clients that send Accept-Encoding: gzip. Javalin decides on the first
+     * write to the response, so the streamed pet list is compressed as it is written.
+     */
+    private static CompressionStrategy compression(ServerConfig serverConfig) {
+        if (serverConfig.gzipLevel() <= 0) {
+            return CompressionStrategy.NONE;
+        }
+        var strategy = new CompressionStrategy(null, new Gzip(serverConfig.gzipLevel()));
+        strategy.setDefaultMinSizeForCompression(serverConfig.compressionMinBytes());
+        return strategy;
+    }
+
     public PetServer run(int port) {
         httpHandler.start(port);
         return this;
@@ -46,39 +113,242 @@ public class PetServer {
     }
 
     public void stop() {
+        service.changes().removeListener(changeListener);
         httpHandler.stop();
+        webSocketHandler.close();
     }
 
     private void exceptionHandler(ResponseException ex, Context ctx) {
         ctx.status(ex.toHttpStatusCode());
-        ctx.result(ex.toJson());
+        if (acceptsBinary(ctx)) {
+            ctx.contentType(BinaryCodec.CONTENT_TYPE).result(BinaryCodec.encode(ex));
+        } else {
+            ctx.result(ex.toJson());
+        }
     }
 
     private void addPet(Context ctx) throws ResponseException {
-        Pet pet = new Gson().fromJson(ctx.body(), Pet.class);
+        Pet pet = parseBody(ctx, Pet.class);
         pet = service.addPet(pet);
-        webSocketHandler.makeNoise(pet.name(), pet.sound());
-        ctx.result(new Gson().toJson(pet));
+        webSocketHandler.makeNoise(pet);
+        changeSequenceHeader(ctx);
+        respond(ctx, pet);
+    }
+
+    private void addPets(Context ctx) throws ResponseException {
+        PetList pets = parseBody(ctx, PetList.class);
+        pets = service.addPets(pets);
+        if (!pets.isEmpty()) {
+            webSocketHandler.makeNoise(String.format("%d pets arrived", pets.size()), Topic.of(pets));
+        }
+        changeSequenceHeader(ctx);
+        respond(ctx, pets);
+    }
+
+    /**
+     * Tells the client the number of the last change once its write has been made, so a client
+     * that keeps its own copy of the pets can wait for the copy to include the write.
+     */
+    private void changeSequenceHeader(Context ctx) {
+        ctx.header(ServerFacade.CHANGE_SEQUENCE_HEADER, Long.toString(service.changes().lastSequence()));
     }
 
+    /**
+     * JSON is the default. Clients that list the binary type in their Accept header get the
+     * compact {@link BinaryCodec} encoding instead.
+     */
+    private static boolean acceptsBinary(Context ctx) {
+        var accept = ctx.header(Header.ACCEPT);
+        return accept != null && accept.contains(BinaryCodec.CONTENT_TYPE);
+    }
+
+    private static void respond(Context ctx, Object body) {
+        if (acceptsBinary(ctx)) {
+            ctx.contentType(BinaryCodec.CONTENT_TYPE).result(BinaryCodec.encode(body));
+        } else {
+            ctx.contentType(ContentType.APPLICATION_JSON).result(Serializer.toJson(body));
+        }
+    }
+
+    /**
+     * Without query parameters every pet is streamed. With any of limit, after, type, or name
+     * a single page is returned, and the next page is requested with after set to the last ID.
+     * <br/>
+     * The response is tagged with the store's version. A client that sends the tag back in
+     * If-None-Match gets 304 Not Modified, with no body, until a pet is added or deleted.
+     */
     private void listPets(Context ctx) throws ResponseException {
-        ctx.result(service.listPets().toString());
+        // The tag is weak because the gzipped and plain bodies for a version share it.
+        var etag = String.format("W/\"%s-%d\"", etagPrefix, service.version());
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, "no-cache");
+        ctx.header(Header.VARY, Header.ACCEPT + ", " + Header.ACCEPT_ENCODING);
+        if (matchesETag(ctx.header(Header.IF_NONE_MATCH), etag)) {
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            return;
+        }
+
+        if (!isPageRequest(ctx)) {
+            if (acceptsBinary(ctx)) {
+                respond(ctx, service.listPets());
+            } else {
+                ctx.contentType(ContentType.APPLICATION_JSON);
+                service.writePets(ctx.outputStream());
+            }
+            return;
+        }
+
+        var query = new PetQuery(
+                intQueryParam(ctx, "after", 0),
+                intQueryParam(ctx, "limit", PetQuery.DEFAULT_LIMIT),
+                typeQueryParam(ctx),
+                ctx.queryParam("name"));
+        respond(ctx, service.listPets(query));
+    }
+
+    /**
+     * Whether any of the paging parameters were given. Others, such as a cache buster, are
+     * ignored, so they don't turn a full listing into a single page.
+     */
+    private static boolean isPageRequest(Context ctx) {
+        for (String param : PAGE_PARAMS) {
+            if (ctx.queryParam(param) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether an If-None-Match header lists the tag. Tags are compared by value, ignoring
+     * whether they are weak, as a conditional GET should.
+     */
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        etag = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = stripWeak(candidate.trim());
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private int intQueryParam(Context ctx, String name, int defaultValue) throws ResponseException {
+        var value = ctx.queryParam(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new ResponseException(ResponseException.Code.ClientError, String.format("Error: invalid %s", name));
+        }
+    }
+
+    private PetType typeQueryParam(Context ctx) throws ResponseException {
+        var value = ctx.queryParam("type");
+        if (value == null) {
+            return null;
+        }
+        try {
+            return PetType.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseException(ResponseException.Code.ClientError, "Error: invalid type");
+        }
+    }
+
+    /**
+     * Looks up a single pet, so a client need not list the whole shop to find one.
+     * Answers 404 Not Found, with no body, if there is no pet with the ID.
+     */
+    private void getPet(Context ctx) throws ResponseException {
+        Pet pet = service.getPet(idPathParam(ctx));
+        if (pet != null) {
+            respond(ctx, pet);
+        } else {
+            ctx.status(404);
+        }
+    }
+
+    /**
+     * Returns the changes made after the sequence number in the after parameter, so that a client
+     * keeping its own copy of the pets can catch up. Answers 410 Gone if the feed no longer has
+     * all of them, in which case the client has to list every pet again.
+     */
+    private void listChanges(Context ctx) throws ResponseException {
+        long after;
+        try {
+            after = Long.parseLong(ctx.queryParam("after"));
+        } catch (NumberFormatException ex) {
+            throw new ResponseException(ResponseException.Code.ClientError, "Error: invalid after");
+        }
+        var feed = service.changes();
+        List<PetChange> changes = feed.since(after);
+        if (changes == null) {
+            ctx.status(HttpStatus.GONE);
+            return;
+        }
+        ctx.contentType(ContentType.APPLICATION_JSON).result(Serializer.toJson(new PetChanges(feed.id(), changes)));
     }
 
     private void deletePet(Context ctx) throws ResponseException {
-        var id = Integer.parseInt(ctx.pathParam("id"));
-        Pet pet = service.getPet(id);
+        Pet pet = service.deletePet(idPathParam(ctx));
         if (pet != null) {
-            service.deletePet(id);
-            webSocketHandler.makeNoise(pet.name(), pet.sound());
+            webSocketHandler.makeNoise(pet);
+            changeSequenceHeader(ctx);
             ctx.status(204);
         } else {
             ctx.status(404);
         }
     }
 
+    private int idPathParam(Context ctx) throws ResponseException {
+        try {
+            return Integer.parseInt(ctx.pathParam("id"));
+        } catch (NumberFormatException ex) {
+            throw new ResponseException(ResponseException.Code.ClientError, "Error: invalid pet ID");
+        }
+    }
+
+    private void deletePets(Context ctx) throws ResponseException {
+        // Not List.of, which throws on a null, so that the service rejects a null ID as a client error.
+        List<Integer> ids = Arrays.asList(parseBody(ctx, Integer[].class));
+        PetList removed = service.deletePets(ids);
+        if (!removed.isEmpty()) {
+            webSocketHandler.makeNoise(String.format("%d pets were adopted", removed.size()), Topic.of(removed));
+        }
+        changeSequenceHeader(ctx);
+        ctx.status(204);
+    }
+
+    private <T> T parseBody(Context ctx, Class<T> type) throws ResponseException {
+        T body;
+        if (BinaryCodec.CONTENT_TYPE.equals(ctx.contentType())) {
+            try {
+                body = BinaryCodec.decode(ctx.bodyAsBytes(), type);
+            } catch (IllegalArgumentException ex) {
+                throw new ResponseException(ResponseException.Code.ClientError, "Error: malformed request body");
+            }
+        } else {
+            body = Serializer.fromJson(ctx.body(), type);
+        }
+        if (body == null) {
+            throw new ResponseException(ResponseException.Code.ClientError, "Error: missing request body");
+        }
+        return body;
+    }
+
     private void deleteAllPets(Context ctx) throws ResponseException {
         service.deleteAllPets();
+        changeSequenceHeader(ctx);
         ctx.status(204);
     }
 }
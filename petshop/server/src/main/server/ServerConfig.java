@@ -0,0 +1,27 @@
+package server;
+
+/**
+ * Startup options for {@link PetServer}.
+ *
+ * @param virtualThreads      run each request and WebSocket handler on its own virtual thread
+ *                            instead of one of Jetty's 250 platform threads. Handlers that block
+ *                            on JDBC then park their virtual thread rather than holding a pool
+ *                            thread, so concurrency is no longer capped by the pool size.
+ * @param gzipLevel           the deflate level, from 1 (fastest) to 9 (smallest), used to gzip
+ *                            responses for clients that accept it. 0 turns compression off.
+ * @param compressionMinBytes responses whose first write is smaller than this are sent as they
+ *                            are, since compressing a few hundred bytes saves less than it costs.
+ */
+public record ServerConfig(boolean virtualThreads, int gzipLevel, int compressionMinBytes) {
+    public static ServerConfig defaults() {
+        return new ServerConfig(false, 1, 1500);
+    }
+
+    public ServerConfig withVirtualThreads(boolean virtualThreads) {
+        return new ServerConfig(virtualThreads, gzipLevel, compressionMinBytes);
+    }
+
+    public ServerConfig withCompression(int gzipLevel, int compressionMinBytes) {
+        return new ServerConfig(virtualThreads, gzipLevel, compressionMinBytes);
+    }
+}
@@ -0,0 +1,47 @@
+package server.websocket;
+
+import serialization.Serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A notification serialized once for every session it is sent to. The UTF-8 bytes live in
+ * a single read-only heap buffer, and each send gets a duplicate that shares the bytes but
+ * has its own position, so the message is never re-encoded. Notifications are small and
+ * short-lived, so wrapping the array is cheaper than allocating a direct buffer for each one.
+ */
+final class BroadcastFrame {
+    private final String text;
+    private final ByteBuffer utf8;
+
+    BroadcastFrame(String text) {
+        this.text = text;
+        this.utf8 = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Combines the frames into one BATCH notification, reusing their JSON rather than
+     * serializing the notifications again.
+     */
+    static BroadcastFrame batch(List<BroadcastFrame> frames) {
+        var texts = new ArrayList<String>(frames.size());
+        for (BroadcastFrame frame : frames) {
+            texts.add(frame.text);
+        }
+        return new BroadcastFrame(Serializer.batchJson(texts));
+    }
+
+    /**
+     * The message as a String, for sessions that can only be written through the Jetty API.
+     */
+    String text() {
+        return text;
+    }
+
+    ByteBuffer payload() {
+        return utf8.duplicate();
+    }
+}
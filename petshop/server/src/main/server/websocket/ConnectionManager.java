@@ -1,30 +1,288 @@
 package server.websocket;
 
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.core.CoreSession;
 import webSocketMessages.Notification;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
-public class ConnectionManager {
-    public final ConcurrentHashMap<Session, Session> connections = new ConcurrentHashMap<>();
+/**
+ * Fans notifications out to the connected sessions without blocking the caller. A broadcast
+ * is handed to a single fan-out thread, which keeps notifications in order, and each session
+ * has its own bounded {@link SessionOutbox} that is drained with non-blocking writes.
+ * <br/>
+ * A session that cannot keep up either loses its oldest queued notifications or is
+ * disconnected, depending on {@link Config#overflowPolicy()}. A session whose write fails
+ * is removed without affecting delivery to anyone else.
+ * <br/>
+ * Each notification is serialized and UTF-8 encoded once per broadcast into a
+ * {@link BroadcastFrame}, whose payload is shared by the writes to every session.
+ * <br/>
+ * Sessions can subscribe to {@link webSocketMessages.Topic}s. The manager indexes sessions
+ * by topic, so a notification published to some topics only visits the sessions subscribed
+ * to them, plus the sessions that have no subscriptions and so receive everything.
+ * <br/>
+ * Sessions can also ask for their notifications to be batched, which turns a burst of
+ * notifications into a few frames instead of one frame each.
+ */
+public class ConnectionManager implements AutoCloseable {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DISCONNECT
+    }
+
+    public record Config(int queueCapacity, OverflowPolicy overflowPolicy) {
+        public static Config defaults() {
+            return new Config(1024, OverflowPolicy.DROP_OLDEST);
+        }
+    }
+
+    /**
+     * Counts since the manager was created. Disconnected counts sessions removed because they
+     * were too slow or a write to them failed.
+     */
+    public record Metrics(int sessions, long delivered, long dropped, long disconnected) {
+    }
+
+    private final ConcurrentHashMap<Session, SessionOutbox> connections = new ConcurrentHashMap<>();
+    private final Set<SessionOutbox> unsubscribed = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, Set<SessionOutbox>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong broadcasts = new AtomicLong();
+    // The timer only starts its thread when the first batch is scheduled.
+    private final ScheduledExecutorService batchTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "websocket-batch-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Config config;
+    private final Executor fanOut;
+    private final ExecutorService ownedFanOut;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final SessionOutbox.Listener listener = new SessionOutbox.Listener() {
+        public void delivered() {
+            delivered.increment();
+        }
+
+        public void dropped() {
+            dropped.increment();
+        }
+
+        public void closed(SessionOutbox outbox, boolean slow) {
+            discard(outbox);
+            disconnected.increment();
+            if (slow) {
+                outbox.session().close(StatusCode.POLICY_VIOLATION, "Too slow to keep up with notifications");
+            }
+        }
+    };
+
+    public ConnectionManager() {
+        this(Config.defaults());
+    }
+
+    public ConnectionManager(Config config) {
+        this.config = config;
+        ownedFanOut = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "websocket-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fanOut = ownedFanOut;
+    }
+
+    /**
+     * Runs each broadcast's fan-out on the given executor. Passing Runnable::run fans out on the
+     * calling thread, which is what the benchmarks and tests use to measure and observe it directly.
+     */
+    public ConnectionManager(Config config, Executor fanOut) {
+        this.config = config;
+        this.fanOut = fanOut;
+        this.ownedFanOut = null;
+    }
 
     public void add(Session session) {
-        connections.put(session, session);
+        outbox(session);
+    }
+
+    /**
+     * Returns the Jetty core session used to write pre-encoded frames to the session, or null
+     * to write through the Jetty API instead.
+     */
+    protected CoreSession coreSessionOf(Session session) {
+        return session instanceof WebSocketSession webSocketSession ? webSocketSession.getCoreSession() : null;
     }
 
     public void remove(Session session) {
-        connections.remove(session);
+        var outbox = connections.get(session);
+        if (outbox != null) {
+            discard(outbox);
+        }
+    }
+
+    /**
+     * Subscribes the session to the topic, adding the session if it is not connected yet.
+     */
+    public void subscribe(Session session, String topic) {
+        var outbox = outbox(session);
+        if (outbox.topics().add(topic)) {
+            subscribers.compute(topic, (key, sessions) -> {
+                sessions = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+                sessions.add(outbox);
+                return sessions;
+            });
+            unsubscribed.remove(outbox);
+        }
+    }
+
+    /**
+     * Unsubscribes the session from the topic. A session with no topics left receives every notification again.
+     */
+    public void unsubscribe(Session session, String topic) {
+        var outbox = connections.get(session);
+        if (outbox != null && outbox.topics().remove(topic)) {
+            removeSubscriber(topic, outbox);
+            if (outbox.topics().isEmpty()) {
+                unsubscribed.add(outbox);
+            }
+        }
+    }
+
+    /**
+     * Delivers the session's notifications in batches of up to maxItems, each sent at most window
+     * after its first notification. A zero window turns batching off again.
+     */
+    public void batch(Session session, Duration window, int maxItems) {
+        outbox(session).batch(window, maxItems, batchTimer);
     }
 
-    public void broadcast(Session excludeSession, Notification notification) throws IOException {
-        String msg = notification.toString();
-        for (Session c : connections.values()) {
-            if (c.isOpen()) {
-                if (!c.equals(excludeSession)) {
-                    c.getRemote().sendString(msg);
-                }
+    /**
+     * Queues the notification for every open session except excludeSession, whatever they are
+     * subscribed to, and returns immediately.
+     */
+    public void broadcast(Session excludeSession, Notification notification) {
+        publish(excludeSession, notification, null);
+    }
+
+    /**
+     * Queues the notification for every open session except excludeSession that is subscribed
+     * to one of the topics or has no subscriptions, and returns immediately.
+     */
+    public void broadcast(Session excludeSession, Notification notification, Collection<String> topics) {
+        publish(excludeSession, notification, topics);
+    }
+
+    /**
+     * Queues the notification only for the sessions subscribed to the topic. Sessions with no
+     * subscriptions do not receive it.
+     */
+    public void broadcastToSubscribers(Notification notification, String topic) {
+        execute(() -> deliver(null, notification, List.of(topic), false));
+    }
+
+    /**
+     * Queues the notification for one session, in order with the broadcasts queued before it.
+     */
+    public void send(Session session, Notification notification) {
+        execute(() -> {
+            var outbox = connections.get(session);
+            if (outbox != null && session.isOpen()) {
+                outbox.offer(new BroadcastFrame(notification.toString()));
+            }
+        });
+    }
+
+    private void publish(Session excludeSession, Notification notification, Collection<String> topics) {
+        execute(() -> deliver(excludeSession, notification, topics, true));
+    }
+
+    private void execute(Runnable task) {
+        try {
+            fanOut.execute(task);
+        } catch (RejectedExecutionException ex) {
+            // The manager has been closed, so there is nobody left to notify.
+        }
+    }
+
+    private void deliver(Session excludeSession, Notification notification, Collection<String> topics, boolean includeUnsubscribed) {
+        var frame = new BroadcastFrame(notification.toString());
+        long broadcast = broadcasts.incrementAndGet();
+        if (topics == null) {
+            offer(connections.values(), excludeSession, frame, broadcast);
+            return;
+        }
+        if (includeUnsubscribed) {
+            offer(unsubscribed, excludeSession, frame, broadcast);
+        }
+        for (String topic : topics) {
+            var sessions = subscribers.get(topic);
+            if (sessions != null) {
+                offer(sessions, excludeSession, frame, broadcast);
             }
         }
     }
+
+    private void offer(Collection<SessionOutbox> outboxes, Session excludeSession, BroadcastFrame frame, long broadcast) {
+        for (SessionOutbox outbox : outboxes) {
+            Session session = outbox.session();
+            if (!session.isOpen()) {
+                discard(outbox);
+            } else if (!session.equals(excludeSession) && outbox.markBroadcast(broadcast)) {
+                outbox.offer(frame);
+            }
+        }
+    }
+
+    private SessionOutbox outbox(Session session) {
+        return connections.computeIfAbsent(session, s -> {
+            var outbox = new SessionOutbox(s, coreSessionOf(s), config.queueCapacity(), config.overflowPolicy(), listener);
+            unsubscribed.add(outbox);
+            return outbox;
+        });
+    }
+
+    /**
+     * Removes the session and all of its subscriptions.
+     */
+    private void discard(SessionOutbox outbox) {
+        connections.remove(outbox.session(), outbox);
+        unsubscribed.remove(outbox);
+        for (String topic : outbox.topics()) {
+            removeSubscriber(topic, outbox);
+        }
+    }
+
+    private void removeSubscriber(String topic, SessionOutbox outbox) {
+        subscribers.computeIfPresent(topic, (key, sessions) -> {
+            sessions.remove(outbox);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    public Metrics metrics() {
+        return new Metrics(connections.size(), delivered.sum(), dropped.sum(), disconnected.sum());
+    }
+
+    @Override
+    public void close() {
+        if (ownedFanOut != null) {
+            ownedFanOut.shutdown();
+        }
+        batchTimer.shutdownNow();
+    }
 }
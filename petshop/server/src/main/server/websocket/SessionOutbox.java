@@ -0,0 +1,317 @@
+package server.websocket;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The bounded queue of messages waiting to be written to one session. At most one write
+ * is outstanding at a time, and its completion callback starts the next one, so no thread
+ * ever waits on a slow client.
+ * <br/>
+ * When the session's Jetty core session is available, each message is written as a text
+ * frame over the frame's shared UTF-8 payload. Otherwise it falls back to the non-blocking
+ * sendString, which encodes the message again for every session.
+ * <br/>
+ * A session can opt in to batching. Its messages are then held until the batching window
+ * has passed since the first of them, or until enough have arrived, and are queued as a
+ * single BATCH notification.
+ */
+class SessionOutbox implements WriteCallback, Callback {
+
+    interface Listener {
+        void delivered();
+
+        void dropped();
+
+        void closed(SessionOutbox outbox, boolean slow);
+    }
+
+    private final Session session;
+    private final CoreSession coreSession;
+    private final int capacity;
+    private final ConnectionManager.OverflowPolicy overflowPolicy;
+    private final Listener listener;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<BroadcastFrame> queue = new ArrayDeque<>();
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private final AtomicLong lastBroadcast = new AtomicLong(-1);
+    private boolean sending = false;
+    private boolean inSend = false;
+    private boolean completedInSend = false;
+    private boolean closed = false;
+    private final ArrayList<BroadcastFrame> batch = new ArrayList<>();
+    private Duration batchWindow = Duration.ZERO;
+    private int batchMaxItems = 0;
+    private ScheduledExecutorService batchTimer;
+    private ScheduledFuture<?> batchFlush;
+
+    SessionOutbox(Session session, CoreSession coreSession, int capacity,
+                  ConnectionManager.OverflowPolicy overflowPolicy, Listener listener) {
+        this.session = session;
+        this.coreSession = coreSession;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.listener = listener;
+    }
+
+    Session session() {
+        return session;
+    }
+
+    /**
+     * The topics the session is subscribed to. Empty means it receives every notification.
+     */
+    Set<String> topics() {
+        return topics;
+    }
+
+    /**
+     * Records that the broadcast has reached this session, returning false if it already had, so
+     * a session subscribed to several of a notification's topics receives it only once.
+     */
+    boolean markBroadcast(long broadcast) {
+        return lastBroadcast.getAndSet(broadcast) != broadcast;
+    }
+
+    /**
+     * Turns batching on, or off when the window is zero. Turning it off sends anything still held.
+     */
+    void batch(Duration window, int maxItems, ScheduledExecutorService timer) {
+        BroadcastFrame pending;
+        lock.lock();
+        try {
+            batchWindow = window;
+            batchMaxItems = maxItems;
+            batchTimer = timer;
+            pending = window.isZero() ? takeBatch() : null;
+        } finally {
+            lock.unlock();
+        }
+        if (pending != null) {
+            enqueue(pending);
+        }
+    }
+
+    /**
+     * Adds the message to the current batch, or queues it straight away if batching is off.
+     */
+    void offer(BroadcastFrame message) {
+        BroadcastFrame full = null;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (batchWindow.isZero()) {
+                full = message;
+            } else {
+                batch.add(message);
+                if (batch.size() >= batchMaxItems) {
+                    full = takeBatch();
+                } else if (batch.size() == 1) {
+                    batchFlush = batchTimer.schedule(this::flushBatch, batchWindow.toNanos(), TimeUnit.NANOSECONDS);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            enqueue(full);
+        }
+    }
+
+    private void flushBatch() {
+        BroadcastFrame pending;
+        lock.lock();
+        try {
+            pending = takeBatch();
+        } finally {
+            lock.unlock();
+        }
+        if (pending != null) {
+            enqueue(pending);
+        }
+    }
+
+    /**
+     * Removes the held messages as one frame. A batch of one is sent as the message itself.
+     */
+    private BroadcastFrame takeBatch() {
+        if (batchFlush != null) {
+            batchFlush.cancel(false);
+            batchFlush = null;
+        }
+        if (batch.isEmpty()) {
+            return null;
+        }
+        BroadcastFrame frame = batch.size() == 1 ? batch.getFirst() : BroadcastFrame.batch(batch);
+        batch.clear();
+        return frame;
+    }
+
+    /**
+     * Queues the frame and starts writing it if the session is idle. Never blocks.
+     */
+    private void enqueue(BroadcastFrame message) {
+        BroadcastFrame next = null;
+        boolean overflowed = false;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (queue.size() >= capacity) {
+                if (overflowPolicy == ConnectionManager.OverflowPolicy.DISCONNECT) {
+                    overflowed = true;
+                } else {
+                    queue.pollFirst();
+                    listener.dropped();
+                }
+            }
+            if (!overflowed) {
+                queue.addLast(message);
+                if (!sending) {
+                    sending = true;
+                    next = queue.pollFirst();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (overflowed) {
+            close(true);
+        } else if (next != null) {
+            send(next);
+        }
+    }
+
+    @Override
+    public void writeSuccess() {
+        listener.delivered();
+        BroadcastFrame next;
+        lock.lock();
+        try {
+            if (inSend) {
+                // The write completed before the send call returned, so the loop in send carries on.
+                completedInSend = true;
+                return;
+            }
+            next = nextOrIdle();
+        } finally {
+            lock.unlock();
+        }
+        if (next != null) {
+            send(next);
+        }
+    }
+
+    @Override
+    public void writeFailed(Throwable cause) {
+        close(false);
+    }
+
+    @Override
+    public void succeeded() {
+        writeSuccess();
+    }
+
+    @Override
+    public void failed(Throwable cause) {
+        writeFailed(cause);
+    }
+
+    /**
+     * The completion callback only takes a lock and starts the next non-blocking write, so
+     * Jetty can run it on the I/O thread.
+     */
+    @Override
+    public InvocationType getInvocationType() {
+        return InvocationType.NON_BLOCKING;
+    }
+
+    /**
+     * Stops delivery and forgets the queued messages. Closing a slow session also closes the connection.
+     */
+    void close(boolean slow) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+            batch.clear();
+            if (batchFlush != null) {
+                batchFlush.cancel(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+        listener.closed(this, slow);
+    }
+
+    /**
+     * Writes messages until one does not complete immediately. Completions that happen inside
+     * the send call are handled here rather than by recursing from the callback.
+     */
+    private void send(BroadcastFrame message) {
+        while (message != null) {
+            lock.lock();
+            try {
+                inSend = true;
+                completedInSend = false;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                if (coreSession != null) {
+                    coreSession.sendFrame(new Frame(OpCode.TEXT, message.payload()), this, false);
+                } else {
+                    session.getRemote().sendString(message.text(), this);
+                }
+            } catch (RuntimeException ex) {
+                lock.lock();
+                try {
+                    inSend = false;
+                } finally {
+                    lock.unlock();
+                }
+                close(false);
+                return;
+            }
+
+            lock.lock();
+            try {
+                inSend = false;
+                message = completedInSend ? nextOrIdle() : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private BroadcastFrame nextOrIdle() {
+        BroadcastFrame next = closed ? null : queue.pollFirst();
+        if (next == null) {
+            sending = false;
+        }
+        return next;
+    }
+}
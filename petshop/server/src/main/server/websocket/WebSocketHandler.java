@@ -1,22 +1,48 @@
 package server.websocket;
 
-import com.google.gson.Gson;
-import exception.ResponseException;
 import io.javalin.websocket.WsCloseContext;
 import io.javalin.websocket.WsCloseHandler;
 import io.javalin.websocket.WsConnectContext;
 import io.javalin.websocket.WsConnectHandler;
 import io.javalin.websocket.WsMessageContext;
 import io.javalin.websocket.WsMessageHandler;
+import model.Pet;
+import model.PetChange;
 import org.eclipse.jetty.websocket.api.Session;
+import serialization.Serializer;
 import webSocketMessages.Action;
 import webSocketMessages.Notification;
+import webSocketMessages.Topic;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongSupplier;
 
-public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsCloseHandler {
+public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsCloseHandler, AutoCloseable {
+    private static final int MAX_BATCH_WINDOW_MILLIS = 1000;
+    private static final int MAX_BATCH_ITEMS = 1000;
+    private static final int MAX_FRAME_CHANGES = 256;
 
-    private final ConnectionManager connections = new ConnectionManager();
+    private final ConnectionManager connections;
+    private final LongSupplier changeSequence;
+
+    public WebSocketHandler() {
+        this(new ConnectionManager());
+    }
+
+    public WebSocketHandler(ConnectionManager connections) {
+        this(connections, () -> 0);
+    }
+
+    /**
+     * The change sequence gives the number of the last change to the pets, which is sent to
+     * sessions that subscribe to {@link Topic#CHANGES}.
+     */
+    public WebSocketHandler(ConnectionManager connections, LongSupplier changeSequence) {
+        this.connections = connections;
+        this.changeSequence = changeSequence;
+    }
 
     @Override
     public void handleConnect(WsConnectContext ctx) {
@@ -26,43 +52,85 @@ public class WebSocketHandler implements WsConnectHandler, WsMessageHandler, WsC
 
     @Override
     public void handleMessage(WsMessageContext ctx) {
-        try {
-            Action action = new Gson().fromJson(ctx.message(), Action.class);
-            switch (action.type()) {
-                case ENTER -> enter(action.visitorName(), ctx.session);
-                case EXIT -> exit(action.visitorName(), ctx.session);
-            }
-        } catch (IOException ex) {
-            ex.printStackTrace();
+        Action action = Serializer.fromJson(ctx.message(), Action.class);
+        switch (action.type()) {
+            case ENTER -> enter(action.visitorName(), ctx.session);
+            case EXIT -> exit(action.visitorName(), ctx.session);
+            case SUBSCRIBE -> subscribe(action.topic(), ctx.session);
+            case UNSUBSCRIBE -> connections.unsubscribe(ctx.session, action.topic());
+            case BATCH -> batch(action.batching(), ctx.session);
         }
     }
 
     @Override
     public void handleClose(WsCloseContext ctx) {
         System.out.println("Websocket closed");
+        connections.remove(ctx.session);
     }
 
-    private void enter(String visitorName, Session session) throws IOException {
+    @Override
+    public void close() {
+        connections.close();
+    }
+
+    private void enter(String visitorName, Session session) {
         connections.add(session);
         var message = String.format("%s is in the shop", visitorName);
         var notification = new Notification(Notification.Type.ARRIVAL, message);
-        connections.broadcast(session, notification);
+        connections.broadcast(session, notification, List.of(Topic.VISITORS));
     }
 
-    private void exit(String visitorName, Session session) throws IOException {
+    private void exit(String visitorName, Session session) {
         var message = String.format("%s left the shop", visitorName);
         var notification = new Notification(Notification.Type.DEPARTURE, message);
-        connections.broadcast(session, notification);
+        connections.broadcast(session, notification, List.of(Topic.VISITORS));
         connections.remove(session);
     }
 
-    public void makeNoise(String petName, String sound) throws ResponseException {
-        try {
-            var message = String.format("%s says %s", petName, sound);
-            var notification = new Notification(Notification.Type.NOISE, message);
-            connections.broadcast(null, notification);
-        } catch (Exception ex) {
-            throw new ResponseException(ResponseException.Code.ServerError, ex.getMessage());
+    private void subscribe(String topic, Session session) {
+        if (Topic.isValid(topic)) {
+            connections.subscribe(session, topic);
+            if (topic.equals(Topic.CHANGES)) {
+                // Read once the subscription is in place, so every later change reaches the session.
+                connections.send(session, Notification.changes(changeSequence.getAsLong(), List.of()));
+            }
+        } else {
+            System.out.println("Ignoring subscription to unknown topic " + topic);
+        }
+    }
+
+    private void batch(Action.Batching batching, Session session) {
+        if (batching == null) {
+            return;
+        }
+        int windowMillis = Math.clamp(batching.windowMillis(), 0, MAX_BATCH_WINDOW_MILLIS);
+        int maxItems = Math.clamp(batching.maxItems(), 1, MAX_BATCH_ITEMS);
+        connections.batch(session, Duration.ofMillis(windowMillis), maxItems);
+    }
+
+    /**
+     * Queues the pet's noise for the visitors subscribed to it and returns without waiting for it to be delivered.
+     */
+    public void makeNoise(Pet pet) {
+        makeNoise(String.format("%s says %s", pet.name(), pet.sound()), Topic.of(pet));
+    }
+
+    public void makeNoise(String message, Collection<String> topics) {
+        var notification = new Notification(Notification.Type.NOISE, message);
+        connections.broadcast(null, notification, topics);
+    }
+
+    /**
+     * Queues the changes for the sessions subscribed to {@link Topic#CHANGES}, in the order
+     * they are published, and returns without waiting for them to be delivered. A large
+     * write is split into notifications of at most {@value #MAX_FRAME_CHANGES} changes, so
+     * no single frame is too big to send to a slow session.
+     */
+    public void publishChanges(List<PetChange> changes) {
+        for (int from = 0; from < changes.size(); from += MAX_FRAME_CHANGES) {
+            var frame = changes.subList(from, Math.min(from + MAX_FRAME_CHANGES, changes.size()));
+            var notification = Notification.changes(frame.getLast().sequence(), frame);
+            connections.broadcastToSubscribers(notification, Topic.CHANGES);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,226 @@
+package service;
+
+import dataaccess.DataAccess;
+import model.Pet;
+import model.PetChange;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Every change made to the pets, numbered from 1 in the order it was made. The most recent
+ * changes are kept in a fixed-size ring, so a subscriber that fell behind or reconnected can
+ * catch up with {@link #since} instead of reloading every pet.
+ * <br/>
+ * Numbers restart with the server. The feed's {@link #id()} is chosen at random when it is
+ * created, so a subscriber can tell that its sequence number came from an earlier feed.
+ * <br/>
+ * Stores report their writes with tickets from {@link #reserve}, which may arrive out of
+ * order because stores do not hold a lock while they report. A report that arrives ahead of
+ * an earlier ticket waits in a map until the earlier ones are in, and its caller waits until
+ * it has been appended, so a write's changes are numbered before it returns.
+ * <br/>
+ * A write that changes more than {@link #maxBatch()} pets is recorded as a single RESYNC
+ * change instead, so that one write cannot push its own first changes, and every change
+ * before it, out of the ring.
+ */
+public class ChangeFeed implements DataAccess.WriteListener {
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final int DEFAULT_MAX_BATCH = 1000;
+
+    private final String id = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final AtomicLong tickets = new AtomicLong();
+    // Reports that came in ahead of an earlier ticket, by ticket. Only used while holding the lock.
+    private final Map<Long, Runnable> waiting = new HashMap<>();
+    private long nextTicket = 1;
+    private final PetChange[] ring;
+    private final int maxBatch;
+    private final List<Consumer<List<PetChange>>> listeners = new CopyOnWriteArrayList<>();
+    // Only written while holding the lock.
+    private volatile long lastSequence = 0;
+
+    public ChangeFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ChangeFeed(int capacity) {
+        this(capacity, Math.min(capacity, DEFAULT_MAX_BATCH));
+    }
+
+    public ChangeFeed(int capacity, int maxBatch) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The change feed needs room for at least one change");
+        }
+        if (maxBatch <= 0 || maxBatch > capacity) {
+            throw new IllegalArgumentException("The change feed's largest batch must fit in it");
+        }
+        ring = new PetChange[capacity];
+        this.maxBatch = maxBatch;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * The most changes a single write is recorded with, before it becomes a RESYNC.
+     */
+    public int maxBatch() {
+        return maxBatch;
+    }
+
+    /**
+     * The sequence number of the last change, or 0 if there have been none.
+     */
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * The listener is called with the changes of each write, in order, while the feed is locked,
+     * so it must not block.
+     */
+    public void addListener(Consumer<List<PetChange>> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<List<PetChange>> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The changes after the given sequence number, oldest first, or null if some of them are no
+     * longer kept, or the number is ahead of this feed and so must have come from another.
+     */
+    public List<PetChange> since(long sequence) {
+        lock.lock();
+        try {
+            long last = lastSequence;
+            long oldest = Math.max(1, last - ring.length + 1);
+            if (sequence > last || sequence < oldest - 1) {
+                return null;
+            }
+            var changes = new ArrayList<PetChange>((int) (last - sequence));
+            for (long next = sequence + 1; next <= last; next++) {
+                changes.add(ring[slot(next)]);
+            }
+            return changes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long reserve() {
+        return tickets.incrementAndGet();
+    }
+
+    @Override
+    public void added(long ticket, Collection<Pet> pets) {
+        report(ticket, () -> appendAll(pets, PetChange::added));
+    }
+
+    /**
+     * Records the pets a write removed, which must only be the ones that existed.
+     */
+    @Override
+    public void removed(long ticket, Collection<Pet> pets) {
+        report(ticket, () -> appendAll(pets, PetChange::removed));
+    }
+
+    @Override
+    public void cleared(long ticket) {
+        report(ticket, () -> publish(List.of(append(PetChange.cleared(lastSequence + 1)))));
+    }
+
+    @Override
+    public void cancelled(long ticket) {
+        // Nothing was changed, so there is nothing for the caller to wait for.
+        report(ticket, () -> {}, false);
+    }
+
+    private void report(long ticket, Runnable report) {
+        report(ticket, report, true);
+    }
+
+    /**
+     * Runs the ticket's report and any waiting ones that follow it once every earlier ticket
+     * has been reported, and if asked, returns only when the ticket's own report has run.
+     */
+    private void report(long ticket, Runnable report, boolean await) {
+        lock.lock();
+        try {
+            waiting.put(ticket, report);
+            RuntimeException failure = null;
+            if (ticket == nextTicket) {
+                for (var next = waiting.remove(nextTicket); next != null; next = waiting.remove(nextTicket)) {
+                    nextTicket++;
+                    try {
+                        next.run();
+                    } catch (RuntimeException ex) {
+                        // Keeps going, so a listener that throws does not leave later reports stuck.
+                        failure = failure == null ? ex : failure;
+                    }
+                }
+                appended.signalAll();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            while (await && nextTicket <= ticket) {
+                appended.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends and publishes a change for each pet, or a single RESYNC if there are too many.
+     */
+    private void appendAll(Collection<Pet> pets, BiFunction<Long, Pet, PetChange> change) {
+        if (pets.size() > maxBatch) {
+            publish(List.of(append(PetChange.resync(lastSequence + 1))));
+            return;
+        }
+        var changes = new ArrayList<PetChange>(pets.size());
+        for (Pet pet : pets) {
+            changes.add(append(change.apply(lastSequence + 1, pet)));
+        }
+        publish(changes);
+    }
+
+    private PetChange append(PetChange change) {
+        ring[slot(change.sequence())] = change;
+        lastSequence = change.sequence();
+        return change;
+    }
+
+    private void publish(List<PetChange> changes) {
+        if (!changes.isEmpty()) {
+            for (var listener : listeners) {
+                listener.accept(changes);
+            }
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+}
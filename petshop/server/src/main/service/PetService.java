@@ -5,45 +5,123 @@ import model.*;
 import exception.ResponseException;
 import model.PetType;
 
+import java.io.OutputStream;
 import java.util.Collection;
 
+/**
+ * Every change to the pets is recorded in the {@link ChangeFeed} as a {@link PetChange}.
+ * The feed listens to the store, which reports each write in the order it took effect, so
+ * writes need no lock of their own here and never wait for another write's I/O. The feed's
+ * listeners are called before the write returns. Waiting for a write to become durable
+ * happens afterwards, so a store can make many writes durable at once.
+ */
 public class PetService {
 
     private final DataAccess dataAccess;
+    private final ChangeFeed changes;
 
     public PetService(DataAccess dataAccess) {
+        this(dataAccess, new ChangeFeed());
+    }
+
+    public PetService(DataAccess dataAccess, ChangeFeed changes) {
         this.dataAccess = dataAccess;
+        this.changes = changes;
+        dataAccess.setWriteListener(changes);
     }
 
     // Pet Shop is very simple.
     // A more complicated application would do the business logic in the service.
 
+    public ChangeFeed changes() {
+        return changes;
+    }
+
     public Pet addPet(Pet pet) throws ResponseException {
-        if (pet.type() == PetType.DOG && pet.name().equals("fleas")) {
-            throw new ResponseException(ResponseException.Code.ClientError, "Error: no dogs with fleas");
+        validatePet(pet);
+        Pet added = dataAccess.addPet(pet);
+        dataAccess.awaitDurable();
+        return added;
+    }
+
+    public PetList addPets(Collection<Pet> pets) throws ResponseException {
+        for (Pet pet : pets) {
+            validatePet(pet);
         }
-        return dataAccess.addPet(pet);
+        PetList added = dataAccess.addPets(pets);
+        dataAccess.awaitDurable();
+        return added;
     }
 
     public PetList listPets() throws ResponseException {
         return dataAccess.listPets();
     }
 
+    public PetList listPets(PetQuery query) throws ResponseException {
+        if (query.limit() <= 0 || query.limit() > PetQuery.MAX_LIMIT) {
+            throw new ResponseException(ResponseException.Code.ClientError,
+                    String.format("Error: limit must be between 1 and %d", PetQuery.MAX_LIMIT));
+        }
+        if (query.afterId() < 0) {
+            throw new ResponseException(ResponseException.Code.ClientError, "Error: invalid pet ID");
+        }
+        return dataAccess.listPets(query);
+    }
+
+    public void writePets(OutputStream out) throws ResponseException {
+        dataAccess.writePets(out);
+    }
+
+    public long version() throws ResponseException {
+        return dataAccess.version();
+    }
+
     public Pet getPet(int id) throws ResponseException {
         validateId(id);
         return dataAccess.getPet(id);
     }
 
-    public void deletePet(Integer id) throws ResponseException {
+    /**
+     * Returns the pet that was deleted, or null if there was none.
+     */
+    public Pet deletePet(Integer id) throws ResponseException {
         validateId(id);
-        dataAccess.deletePet(id);
+        Pet removed = dataAccess.deletePet(id);
+        dataAccess.awaitDurable();
+        return removed;
+    }
+
+    /**
+     * Returns the pets that were deleted, leaving out IDs that had no pet.
+     */
+    public PetList deletePets(Collection<Integer> ids) throws ResponseException {
+        for (Integer id : ids) {
+            validateId(id);
+        }
+        PetList removed = dataAccess.deletePets(ids);
+        dataAccess.awaitDurable();
+        return removed;
     }
 
     public void deleteAllPets() throws ResponseException {
-        Collection<Pet> pets = dataAccess.listPets();
-        if (!pets.isEmpty()) {
-            dataAccess.deleteAllPets();
+        dataAccess.deleteAllPets();
+        dataAccess.awaitDurable();
+    }
+
+    private void validatePet(Pet pet) throws ResponseException {
+        if (pet == null || pet.name() == null || pet.type() == null) {
+            throw new ResponseException(ResponseException.Code.ClientError, "Error: a pet needs a name and a type");
+        }
+        if (pet.type() == PetType.DOG && pet.name().equals("fleas")) {
+            throw new ResponseException(ResponseException.Code.ClientError, "Error: no dogs with fleas");
+        }
+    }
+
+    private void validateId(Integer id) throws ResponseException {
+        if (id == null) {
+            throw new ResponseException(ResponseException.Code.ClientError, "Error: invalid pet ID");
         }
+        validateId((int) id);
     }
 
     private void validateId(int id) throws ResponseException {
@@ -0,0 +1,184 @@
+package dataaccess;
+
+import exception.ResponseException;
+import model.Pet;
+import model.PetList;
+import model.PetQuery;
+import model.PetType;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingDataAccessTest {
+    private final CountingDataAccess store = new CountingDataAccess();
+    private final AtomicLong now = new AtomicLong();
+
+    private CachingDataAccess cache(int capacity) {
+        return new CachingDataAccess(store, new CachingDataAccess.Config(capacity, Duration.ofSeconds(10), capacity, Duration.ofSeconds(1)), now::get);
+    }
+
+    @Test
+    void readsAreServedFromTheCache() throws ResponseException {
+        var dataAccess = cache(100);
+        Pet joe = dataAccess.addPet(new Pet(0, "joe", PetType.CAT));
+        store.reads.set(0);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(joe, dataAccess.getPet(joe.id()));
+            assertEquals(List.of(joe), dataAccess.listPets());
+            assertEquals(List.of(joe), dataAccess.listPets(new PetQuery(10)));
+        }
+
+        assertEquals(2, store.reads.get(), "only the first listing and page should reach the store");
+        var stats = dataAccess.stats();
+        assertEquals(13, stats.hits());
+        assertEquals(2, stats.misses());
+    }
+
+    @Test
+    void writesInvalidate() throws ResponseException {
+        var dataAccess = cache(100);
+        Pet joe = dataAccess.addPet(new Pet(0, "joe", PetType.CAT));
+        assertEquals(List.of(joe), dataAccess.listPets());
+        assertEquals(List.of(joe), dataAccess.listPets(new PetQuery(10)));
+
+        Pet sally = dataAccess.addPet(new Pet(0, "sally", PetType.DOG));
+        assertEquals(List.of(joe, sally), dataAccess.listPets());
+        assertEquals(List.of(joe, sally), dataAccess.listPets(new PetQuery(10)));
+
+        dataAccess.deletePet(joe.id());
+        assertNull(dataAccess.getPet(joe.id()));
+        assertEquals(List.of(sally), dataAccess.listPets());
+
+        dataAccess.deletePets(List.of(sally.id()));
+        assertNull(dataAccess.getPet(sally.id()));
+        assertEquals(List.of(), dataAccess.listPets(new PetQuery(10)));
+
+        dataAccess.addPets(List.of(new Pet(0, "fido", PetType.DOG)));
+        assertEquals(1, dataAccess.listPets().size());
+        dataAccess.deleteAllPets();
+        assertEquals(List.of(), dataAccess.listPets());
+    }
+
+    @Test
+    void listingsFollowOtherWritersVersion() throws ResponseException {
+        var dataAccess = cache(100);
+        Pet joe = dataAccess.addPet(new Pet(0, "joe", PetType.CAT));
+        assertEquals(List.of(joe), dataAccess.listPets());
+        assertEquals(List.of(joe), dataAccess.listPets(new PetQuery(10)));
+
+        // Written straight to the store, as another server sharing the database would.
+        long before = dataAccess.version();
+        Pet sally = store.addPet(new Pet(0, "sally", PetType.DOG));
+        assertEquals(before, dataAccess.version());
+        assertEquals(List.of(joe), dataAccess.listPets());
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        long version = dataAccess.version();
+        assertNotEquals(before, version);
+        assertEquals(List.of(joe, sally), dataAccess.listPets());
+        assertEquals(List.of(joe, sally), dataAccess.listPets(new PetQuery(10)));
+        assertEquals(version, dataAccess.version());
+    }
+
+    @Test
+    void entriesExpire() throws ResponseException {
+        var dataAccess = cache(100);
+        Pet joe = dataAccess.addPet(new Pet(0, "joe", PetType.CAT));
+        dataAccess.listPets();
+        store.reads.set(0);
+
+        dataAccess.getPet(joe.id());
+        dataAccess.listPets();
+        assertEquals(0, store.reads.get());
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        dataAccess.getPet(joe.id());
+        dataAccess.listPets();
+        assertEquals(2, store.reads.get());
+    }
+
+    @Test
+    void largeListingsAreNotCached() throws ResponseException {
+        var dataAccess = cache(2);
+        dataAccess.addPets(List.of(new Pet(0, "joe", PetType.CAT), new Pet(0, "sally", PetType.CAT), new Pet(0, "fido", PetType.DOG)));
+        store.reads.set(0);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(3, dataAccess.listPets().size());
+            dataAccess.writePets(OutputStream.nullOutputStream());
+        }
+        assertEquals(6, store.reads.get());
+
+        var uncached = new CachingDataAccess(store, new CachingDataAccess.Config(2, Duration.ofSeconds(10), 0, Duration.ofSeconds(1)), now::get);
+        store.reads.set(0);
+        uncached.listPets();
+        uncached.listPets();
+        assertEquals(2, store.reads.get());
+    }
+
+    @Test
+    void listingIsCachedByDefault() throws ResponseException {
+        var dataAccess = new CachingDataAccess(store, CachingDataAccess.Config.defaults(), now::get);
+        dataAccess.addPet(new Pet(0, "joe", PetType.CAT));
+        store.reads.set(0);
+
+        dataAccess.listPets();
+        dataAccess.listPets();
+        assertEquals(1, store.reads.get());
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() throws ResponseException {
+        var dataAccess = cache(2);
+        Pet joe = dataAccess.addPet(new Pet(0, "joe", PetType.CAT));
+        Pet sally = dataAccess.addPet(new Pet(0, "sally", PetType.CAT));
+        dataAccess.getPet(joe.id());
+        Pet fido = dataAccess.addPet(new Pet(0, "fido", PetType.DOG));
+        store.reads.set(0);
+
+        dataAccess.getPet(joe.id());
+        dataAccess.getPet(fido.id());
+        assertEquals(0, store.reads.get());
+        dataAccess.getPet(sally.id());
+        assertEquals(1, store.reads.get());
+        assertEquals(2, dataAccess.stats().evictions());
+    }
+
+    /**
+     * A memory store that counts the reads that reach it.
+     */
+    private static class CountingDataAccess extends MemoryDataAccess {
+        final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public PetList listPets() {
+            reads.incrementAndGet();
+            return super.listPets();
+        }
+
+        @Override
+        public PetList listPets(PetQuery query) {
+            reads.incrementAndGet();
+            return super.listPets(query);
+        }
+
+        @Override
+        public void writePets(OutputStream out) throws ResponseException {
+            reads.incrementAndGet();
+            super.writePets(out);
+        }
+
+        @Override
+        public Pet getPet(int id) {
+            reads.incrementAndGet();
+            return super.getPet(id);
+        }
+    }
+}
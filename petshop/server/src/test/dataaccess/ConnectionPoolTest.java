@@ -0,0 +1,206 @@
+package dataaccess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Exercises the pool against an embedded H2 database running in MySQL mode.
+ */
+class ConnectionPoolTest {
+    private final AtomicInteger created = new AtomicInteger();
+    private ConnectionPool pool;
+
+    @AfterEach
+    void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void reusesReturnedConnections() throws Exception {
+        pool = createPool(new ConnectionPool.Config(0, 2, Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofSeconds(1), 8));
+
+        for (int i = 0; i < 10; i++) {
+            try (Connection conn = pool.getConnection(); var statement = conn.createStatement()) {
+                statement.execute("SELECT 1");
+            }
+        }
+
+        assertEquals(1, created.get());
+        assertEquals(new ConnectionPool.Metrics(0, 1, 0, 1), pool.metrics());
+    }
+
+    @Test
+    void closedConnectionCannotBeUsed() throws Exception {
+        pool = createPool(new ConnectionPool.Config(0, 1, Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofSeconds(1), 8));
+
+        Connection conn = pool.getConnection();
+        conn.close();
+
+        assertTrue(conn.isClosed());
+        assertThrows(SQLException.class, conn::createStatement);
+    }
+
+    @Test
+    void waitsForConnectionAtMaxSize() throws Exception {
+        pool = createPool(new ConnectionPool.Config(0, 1, Duration.ofMinutes(1), Duration.ofSeconds(5), Duration.ofSeconds(1), 8));
+
+        Connection first = pool.getConnection();
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Connection> second = executor.submit(pool::getConnection);
+            waitFor(() -> pool.metrics().waiting() == 1);
+            assertEquals(new ConnectionPool.Metrics(1, 0, 1, 1), pool.metrics());
+
+            first.close();
+            second.get(5, TimeUnit.SECONDS).close();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    void timesOutWhenExhausted() throws Exception {
+        pool = createPool(new ConnectionPool.Config(0, 1, Duration.ofMinutes(1), Duration.ofMillis(100), Duration.ofSeconds(1), 8));
+
+        Connection held = pool.getConnection();
+        try {
+            assertThrows(SQLTransientConnectionException.class, () -> pool.getConnection());
+        } finally {
+            held.close();
+        }
+        assertEquals(0, pool.metrics().waiting());
+    }
+
+    @Test
+    void replacesBrokenConnections() throws Exception {
+        pool = createPool(new ConnectionPool.Config(0, 1, Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofSeconds(1), 8));
+
+        try (Connection conn = pool.getConnection()) {
+            conn.unwrap(Connection.class).close();
+        }
+        try (Connection conn = pool.getConnection(); var statement = conn.createStatement()) {
+            statement.execute("SELECT 1");
+        }
+
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    void rollsBackUncommittedWork() throws Exception {
+        pool = createPool(new ConnectionPool.Config(0, 1, Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofSeconds(1), 8));
+        try (Connection conn = pool.getConnection(); var statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS rollback_test (id int)");
+            statement.execute("DELETE FROM rollback_test");
+        }
+
+        try (Connection conn = pool.getConnection(); var statement = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            statement.execute("INSERT INTO rollback_test VALUES (1)");
+        }
+
+        try (Connection conn = pool.getConnection(); var statement = conn.createStatement();
+             var rs = statement.executeQuery("SELECT COUNT(*) FROM rollback_test")) {
+            assertTrue(conn.getAutoCommit());
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void evictsIdleConnectionsDownToMinSize() throws Exception {
+        pool = createPool(new ConnectionPool.Config(1, 3, Duration.ofMillis(50), Duration.ofSeconds(1), Duration.ofSeconds(1), 8));
+
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        Connection c = pool.getConnection();
+        a.close();
+        b.close();
+        c.close();
+
+        waitFor(() -> pool.metrics().total() == 1);
+        assertEquals(new ConnectionPool.Metrics(0, 1, 0, 1), pool.metrics());
+    }
+
+    @Test
+    void reusesPreparedStatementsAcrossBorrowers() throws Exception {
+        pool = createPool(new ConnectionPool.Config(0, 1, Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofSeconds(1), 8));
+
+        PreparedStatement first;
+        try (Connection conn = pool.getConnection(); var ps = conn.prepareStatement("SELECT ?")) {
+            ps.setInt(1, 1);
+            ps.executeQuery().close();
+            first = ps.unwrap(PreparedStatement.class);
+            assertSame(conn, ps.getConnection());
+        }
+
+        try (Connection conn = pool.getConnection(); var ps = conn.prepareStatement("SELECT ?")) {
+            assertSame(first, ps.unwrap(PreparedStatement.class));
+            ps.setInt(1, 2);
+            try (var rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(2, rs.getInt(1));
+            }
+
+            try (var nested = conn.prepareStatement("SELECT ?")) {
+                assertNotSame(first, nested.unwrap(PreparedStatement.class));
+            }
+        }
+    }
+
+    @Test
+    void closedStatementCannotBeUsed() throws Exception {
+        pool = createPool(new ConnectionPool.Config(0, 1, Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofSeconds(1), 8));
+
+        try (Connection conn = pool.getConnection()) {
+            var ps = conn.prepareStatement("SELECT 1");
+            ps.close();
+            assertTrue(ps.isClosed());
+            assertThrows(SQLException.class, ps::executeQuery);
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedStatements() throws Exception {
+        pool = createPool(new ConnectionPool.Config(0, 1, Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofSeconds(1), 2));
+
+        PreparedStatement evicted;
+        try (Connection conn = pool.getConnection()) {
+            try (var ps = conn.prepareStatement("SELECT 1")) {
+                evicted = ps.unwrap(PreparedStatement.class);
+            }
+            conn.prepareStatement("SELECT 2").close();
+            conn.prepareStatement("SELECT 3").close();
+        }
+
+        assertTrue(evicted.isClosed());
+    }
+
+    private ConnectionPool createPool(ConnectionPool.Config config) {
+        return new ConnectionPool(() -> {
+            created.incrementAndGet();
+            return DriverManager.getConnection("jdbc:h2:mem:pool;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        }, config);
+    }
+
+    private static void waitFor(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.call()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for condition");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -2,10 +2,17 @@ package dataaccess;
 
 import exception.ResponseException;
 import model.Pet;
+import model.PetList;
+import model.PetQuery;
 import model.PetType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -13,11 +20,17 @@ import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
 class DataAccessTest {
+    @TempDir
+    private Path directory;
 
     private DataAccess getDataAccess(Class<? extends DataAccess> databaseClass) throws ResponseException {
         DataAccess db;
         if (databaseClass.equals(MySqlDataAccess.class)) {
             db = new MySqlDataAccess();
+        } else if (databaseClass.equals(CachingDataAccess.class)) {
+            db = new CachingDataAccess(new MemoryDataAccess());
+        } else if (databaseClass.equals(LogDataAccess.class)) {
+            db = new LogDataAccess(directory);
         } else {
             db = new MemoryDataAccess();
         }
@@ -26,7 +39,39 @@ class DataAccessTest {
     }
 
     @ParameterizedTest
-    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class})
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
+    void versionChangesOnWrite(Class<? extends DataAccess> dbClass) throws ResponseException {
+        DataAccess dataAccess = getDataAccess(dbClass);
+
+        long version = dataAccess.version();
+        assertEquals(version, dataAccess.version());
+        Pet joe = dataAccess.addPet(new Pet(0, "joe", PetType.FISH));
+        assertNotEquals(version, version = dataAccess.version());
+        dataAccess.listPets();
+        assertEquals(version, dataAccess.version());
+        dataAccess.addPets(List.of(new Pet(0, "sally", PetType.CAT)));
+        assertNotEquals(version, version = dataAccess.version());
+        dataAccess.deletePet(joe.id());
+        assertNotEquals(version, version = dataAccess.version());
+        dataAccess.deleteAllPets();
+        assertNotEquals(version, dataAccess.version());
+    }
+
+    @Test
+    void sqlVersionSeesOtherServersWrites() throws ResponseException {
+        DataAccess dataAccess = getDataAccess(MySqlDataAccess.class);
+        DataAccess otherServer = new MySqlDataAccess();
+
+        long version = dataAccess.version();
+        otherServer.addPet(new Pet(0, "joe", PetType.FISH));
+        assertNotEquals(version, version = dataAccess.version());
+        assertEquals(version, otherServer.version());
+        otherServer.deletePets(List.of(Integer.MAX_VALUE));
+        assertEquals(version, dataAccess.version());
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
     void addPet(Class<? extends DataAccess> dbClass) throws ResponseException {
         DataAccess dataAccess = getDataAccess(dbClass);
 
@@ -35,7 +80,7 @@ class DataAccessTest {
     }
 
     @ParameterizedTest
-    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class})
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
     void listPets(Class<? extends DataAccess> dbClass) throws ResponseException {
         DataAccess dataAccess = getDataAccess(dbClass);
 
@@ -49,7 +94,95 @@ class DataAccessTest {
     }
 
     @ParameterizedTest
-    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class})
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
+    void writePets(Class<? extends DataAccess> dbClass) throws ResponseException {
+        DataAccess dataAccess = getDataAccess(dbClass);
+
+        var expected = new PetList();
+        expected.add(dataAccess.addPet(new Pet(0, "joe", PetType.FISH)));
+        expected.add(dataAccess.addPet(new Pet(0, "sally", PetType.CAT)));
+
+        var out = new ByteArrayOutputStream();
+        dataAccess.writePets(out);
+        assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
+    void listPetsByPage(Class<? extends DataAccess> dbClass) throws ResponseException {
+        DataAccess dataAccess = getDataAccess(dbClass);
+
+        var expected = new ArrayList<Pet>();
+        for (int i = 0; i < 7; i++) {
+            expected.add(dataAccess.addPet(new Pet(0, "pet" + i, PetType.CAT)));
+        }
+
+        var actual = new ArrayList<Pet>();
+        var query = new PetQuery(3);
+        PetList page = dataAccess.listPets(query);
+        while (!page.isEmpty()) {
+            assertTrue(page.size() <= 3);
+            actual.addAll(page);
+            query = query.next(page);
+            page = dataAccess.listPets(query);
+        }
+        assertEquals(expected, actual);
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
+    void listPetsFiltered(Class<? extends DataAccess> dbClass) throws ResponseException {
+        DataAccess dataAccess = getDataAccess(dbClass);
+
+        Pet joe = dataAccess.addPet(new Pet(0, "joe", PetType.FISH));
+        Pet sally = dataAccess.addPet(new Pet(0, "sally", PetType.CAT));
+        Pet jolene = dataAccess.addPet(new Pet(0, "jolene", PetType.CAT));
+        Pet fido = dataAccess.addPet(new Pet(0, "fido", PetType.DOG));
+        Pet josie = dataAccess.addPet(new Pet(0, "josie", PetType.CAT));
+
+        assertEquals(List.of(sally, jolene, josie), dataAccess.listPets(new PetQuery().ofType(PetType.CAT)));
+        assertEquals(List.of(joe, jolene, josie), dataAccess.listPets(new PetQuery().named("jo")));
+        assertEquals(List.of(jolene, josie), dataAccess.listPets(new PetQuery().ofType(PetType.CAT).named("jo")));
+        assertEquals(List.of(josie), dataAccess.listPets(new PetQuery(1).named("jo").after(jolene.id())));
+        assertEquals(List.of(), dataAccess.listPets(new PetQuery().ofType(PetType.ROCK)));
+
+        dataAccess.deletePets(List.of(joe.id(), josie.id(), fido.id()));
+        assertEquals(List.of(jolene), dataAccess.listPets(new PetQuery().named("jo")));
+        assertEquals(List.of(sally, jolene), dataAccess.listPets(new PetQuery().ofType(PetType.CAT)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
+    void listPetsNamePrefixIsLiteral(Class<? extends DataAccess> dbClass) throws ResponseException {
+        DataAccess dataAccess = getDataAccess(dbClass);
+
+        Pet underscore = dataAccess.addPet(new Pet(0, "a_b", PetType.FROG));
+        dataAccess.addPet(new Pet(0, "axb", PetType.FROG));
+        Pet percent = dataAccess.addPet(new Pet(0, "100%", PetType.FROG));
+        dataAccess.addPet(new Pet(0, "1000", PetType.FROG));
+
+        assertEquals(List.of(underscore), dataAccess.listPets(new PetQuery().named("a_")));
+        assertEquals(List.of(percent), dataAccess.listPets(new PetQuery().named("100%")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
+    void listPetsNamePrefixIsExact(Class<? extends DataAccess> dbClass) throws ResponseException {
+        DataAccess dataAccess = getDataAccess(dbClass);
+
+        Pet joe = dataAccess.addPet(new Pet(0, "Joe", PetType.CAT));
+        Pet lower = dataAccess.addPet(new Pet(0, "joe", PetType.CAT));
+        Pet upper = dataAccess.addPet(new Pet(0, "JOE", PetType.CAT));
+        Pet accented = dataAccess.addPet(new Pet(0, "jöe", PetType.CAT));
+
+        assertEquals(List.of(lower), dataAccess.listPets(new PetQuery().named("jo")));
+        assertEquals(List.of(joe, upper), dataAccess.listPets(new PetQuery().named("J")));
+        assertEquals(List.of(accented), dataAccess.listPets(new PetQuery().named("jö")));
+        assertEquals(List.of(), dataAccess.listPets(new PetQuery().named("JOe")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
     void deletePet(Class<? extends DataAccess> dbClass) throws ResponseException {
         DataAccess dataAccess = getDataAccess(dbClass);
 
@@ -65,7 +198,67 @@ class DataAccessTest {
     }
 
     @ParameterizedTest
-    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class})
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
+    void addPets(Class<? extends DataAccess> dbClass) throws ResponseException {
+        DataAccess dataAccess = getDataAccess(dbClass);
+
+        List<Pet> expected = List.of(
+                new Pet(0, "joe", PetType.FISH),
+                new Pet(0, "sally", PetType.CAT),
+                new Pet(0, "fido", PetType.DOG));
+
+        Collection<Pet> added = dataAccess.addPets(expected);
+        assertPetCollectionEqual(expected, added);
+        for (Pet pet : added) {
+            assertEquals(pet, dataAccess.getPet(pet.id()));
+        }
+        assertPetCollectionEqual(expected, dataAccess.listPets());
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
+    void deletePets(Class<? extends DataAccess> dbClass) throws ResponseException {
+        DataAccess dataAccess = getDataAccess(dbClass);
+
+        List<Pet> expected = new ArrayList<>();
+        Pet joe = dataAccess.addPet(new Pet(0, "joe", PetType.FISH));
+        expected.add(dataAccess.addPet(new Pet(0, "sally", PetType.CAT)));
+        Pet fido = dataAccess.addPet(new Pet(0, "fido", PetType.DOG));
+
+        Collection<Pet> removed = dataAccess.deletePets(List.of(joe.id(), 10_000, fido.id(), joe.id()));
+        assertPetCollectionEqual(List.of(joe, fido), removed);
+
+        Collection<Pet> actual = dataAccess.listPets();
+        assertPetCollectionEqual(expected, actual);
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
+    void deletePetsInBatchesOfAnySize(Class<? extends DataAccess> dbClass) throws ResponseException {
+        DataAccess dataAccess = getDataAccess(dbClass);
+
+        var pets = new ArrayList<Pet>();
+        for (int i = 0; i < 700; i++) {
+            pets.add(new Pet(0, "pet-" + i, PetType.CAT));
+        }
+        PetList added = dataAccess.addPets(pets);
+        var expected = new PetList(added);
+        for (int count : new int[]{1, 3, 9, 70, 600}) {
+            var ids = new ArrayList<Integer>();
+            var removed = new ArrayList<Pet>();
+            for (int i = 0; i < count; i++) {
+                Pet pet = expected.get(i);
+                ids.add(pet.id());
+                removed.add(pet);
+            }
+            assertPetCollectionEqual(removed, dataAccess.deletePets(ids));
+            expected.subList(0, count).clear();
+        }
+        assertPetCollectionEqual(expected, dataAccess.listPets());
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySqlDataAccess.class, MemoryDataAccess.class, CachingDataAccess.class, LogDataAccess.class})
     void deleteAllPets(Class<? extends DataAccess> dbClass) throws Exception {
         DataAccess dataAccess = getDataAccess(dbClass);
 
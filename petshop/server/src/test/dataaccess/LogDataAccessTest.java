@@ -0,0 +1,100 @@
+package dataaccess;
+
+import exception.ResponseException;
+import model.Pet;
+import model.PetList;
+import model.PetType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogDataAccessTest {
+    @TempDir
+    private Path directory;
+
+    @Test
+    void recoversAfterClose() throws Exception {
+        PetList expected;
+        try (var log = new LogDataAccess(directory)) {
+            var added = log.addPets(List.of(new Pet(0, "joe", PetType.CAT), new Pet(0, "sally", null), new Pet(0, null, PetType.DOG)));
+            log.addPet(new Pet(0, "fido", PetType.DOG));
+            log.deletePet(added.getFirst().id());
+            log.awaitDurable();
+            expected = log.listPets();
+        }
+
+        try (var log = new LogDataAccess(directory)) {
+            assertEquals(expected, log.listPets());
+            assertEquals(3, log.recovery().pets());
+            assertEquals(3, log.recovery().records());
+            // IDs are not reused, even for the highest pet once it is deleted.
+            log.deletePet(expected.getLast().id());
+            assertEquals(expected.getLast().id() + 1, log.addPet(new Pet(0, "rex", PetType.DOG)).id());
+        }
+    }
+
+    @Test
+    void replaysLogAfterSnapshot() throws Exception {
+        var config = new LogDataAccess.Config(directory, false, 200);
+        var expected = new ArrayList<Pet>();
+        try (var log = new LogDataAccess(config)) {
+            for (int i = 0; i < 100; i++) {
+                expected.add(log.addPet(new Pet(0, "pet-" + i, PetType.values()[i % PetType.values().length])));
+                log.awaitDurable();
+            }
+            log.deleteAllPets();
+            expected.clear();
+            for (int i = 0; i < 10; i++) {
+                expected.add(log.addPet(new Pet(0, "again-" + i, PetType.FISH)));
+            }
+        }
+
+        try (var log = new LogDataAccess(config)) {
+            assertEquals(expected, log.listPets());
+            // Snapshots replace the logs before them, so only the latest few records are replayed.
+            assertTrue(log.recovery().records() < 100, "replayed " + log.recovery().records());
+        }
+        try (var files = Files.list(directory)) {
+            assertTrue(files.count() < 10);
+        }
+    }
+
+    @Test
+    void cutsOffTornRecord() throws Exception {
+        Pet joe;
+        try (var log = new LogDataAccess(directory)) {
+            joe = log.addPet(new Pet(0, "joe", PetType.CAT));
+            log.addPet(new Pet(0, "sally", PetType.DOG));
+        }
+        Path file = directory.resolve("log-0");
+        long complete = Files.size(file);
+        try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            // Lose the end of the last record, as if the server crashed while writing it.
+            channel.truncate(complete - 3);
+        }
+
+        try (var log = new LogDataAccess(directory)) {
+            assertEquals(List.of(joe), log.listPets());
+            Pet fido = log.addPet(new Pet(0, "fido", PetType.DOG));
+            log.awaitDurable();
+            assertEquals(List.of(joe, fido), log.listPets());
+        }
+        try (var log = new LogDataAccess(directory)) {
+            assertEquals(2, log.listPets().size());
+        }
+    }
+
+    @Test
+    void rejectsWritesAfterClose() throws Exception {
+        var log = new LogDataAccess(directory);
+        log.close();
+        assertThrows(ResponseException.class, () -> log.addPet(new Pet(0, "joe", PetType.CAT)));
+    }
+}
@@ -0,0 +1,170 @@
+package dataaccess;
+
+import model.Pet;
+import model.PetQuery;
+import model.PetType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryDataAccessTest {
+    private static final int THREADS = Math.max(16, Runtime.getRuntime().availableProcessors());
+    private static final int OPERATIONS_PER_THREAD = 20_000;
+
+    @Test
+    void concurrentAddsGetUniqueIds() throws Exception {
+        var dataAccess = new MemoryDataAccess();
+
+        List<List<Pet>> added = runConcurrently(thread -> {
+            var pets = new ArrayList<Pet>();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                pets.add(dataAccess.addPet(new Pet(0, "pet-" + thread + "-" + i, PetType.CAT)));
+            }
+            return pets;
+        });
+
+        var ids = new HashSet<Integer>();
+        for (var pets : added) {
+            for (var pet : pets) {
+                assertTrue(ids.add(pet.id()), "duplicate ID " + pet.id());
+                assertEquals(pet, dataAccess.getPet(pet.id()));
+            }
+        }
+        assertEquals(THREADS * OPERATIONS_PER_THREAD, ids.size());
+        assertEquals(ids.size(), dataAccess.listPets().size());
+    }
+
+    @Test
+    void mixedAddGetDeleteLosesNothing() throws Exception {
+        var dataAccess = new MemoryDataAccess();
+
+        // Every thread deletes every other pet it added and must always be able to read back the rest.
+        List<List<Pet>> kept = runConcurrently(thread -> {
+            var random = ThreadLocalRandom.current();
+            var pets = new ArrayList<Pet>();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                Pet pet = dataAccess.addPet(new Pet(0, "pet-" + thread + "-" + i, PetType.FISH));
+                if (i % 2 == 0) {
+                    dataAccess.deletePet(pet.id());
+                    assertNull(dataAccess.getPet(pet.id()));
+                } else {
+                    pets.add(pet);
+                }
+                if (!pets.isEmpty()) {
+                    Pet existing = pets.get(random.nextInt(pets.size()));
+                    assertEquals(existing, dataAccess.getPet(existing.id()));
+                }
+            }
+            return pets;
+        });
+
+        var expected = new ArrayList<Pet>();
+        kept.forEach(expected::addAll);
+        expected.sort(Comparator.comparingInt(Pet::id));
+        assertIterableEquals(expected, dataAccess.listPets());
+    }
+
+    @Test
+    void listingIsSharedUntilMutation() {
+        var dataAccess = new MemoryDataAccess();
+        dataAccess.addPet(new Pet(0, "joe", PetType.CAT));
+
+        var first = dataAccess.listPets();
+        assertSame(first, dataAccess.listPets());
+        assertThrows(UnsupportedOperationException.class, () -> first.add(new Pet(5, "fido", PetType.DOG)));
+        assertThrows(UnsupportedOperationException.class, () -> first.iterator().remove());
+        assertThrows(UnsupportedOperationException.class, () -> first.subList(0, 1).clear());
+        assertEquals(1, dataAccess.listPets().size());
+
+        Pet sally = dataAccess.addPet(new Pet(0, "sally", PetType.DOG));
+        var second = dataAccess.listPets();
+        assertNotSame(first, second);
+        assertEquals(2, second.size());
+        var out = new ByteArrayOutputStream();
+        assertDoesNotThrow(() -> dataAccess.writePets(out));
+        assertEquals(second.toString(), out.toString(StandardCharsets.UTF_8));
+
+        dataAccess.deletePet(sally.id());
+        assertEquals(1, dataAccess.listPets().size());
+    }
+
+    @Test
+    void indexesStayInStepWithConcurrentDeletes() throws Exception {
+        var dataAccess = new MemoryDataAccess();
+        var types = PetType.values();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                Pet pet = dataAccess.addPet(new Pet(0, "pet-" + (i % 100), types[i % types.length]));
+                if (i % 3 == 0) {
+                    dataAccess.deletePet(pet.id());
+                }
+            }
+            return null;
+        });
+
+        var all = dataAccess.listPets();
+        for (PetType type : types) {
+            var query = new PetQuery(PetQuery.MAX_LIMIT).ofType(type).named("pet-1");
+            var expected = all.stream().filter(query::matches).toList();
+            var actual = new ArrayList<Pet>();
+            for (var page = dataAccess.listPets(query); !page.isEmpty(); query = query.next(page), page = dataAccess.listPets(query)) {
+                actual.addAll(page);
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void namePrefixPagesMatchEveryPrefixLength() {
+        var dataAccess = new MemoryDataAccess();
+        for (int i = 0; i < 3000; i++) {
+            dataAccess.addPet(new Pet(0, i % 7 == 0 ? "peter" : "pet-" + i, PetType.values()[i % PetType.values().length]));
+        }
+        dataAccess.deletePets(List.of(10, 20, 30));
+
+        var all = dataAccess.listPets();
+        for (String prefix : List.of("p", "pet", "pet-", "pet-1", "pet-19", "pet-199", "pete", "peter", "peterson", "x")) {
+            var query = new PetQuery(50).named(prefix);
+            var expected = all.stream().filter(query::matches).toList();
+            var actual = new ArrayList<Pet>();
+            for (var page = dataAccess.listPets(query); !page.isEmpty(); query = query.next(page), page = dataAccess.listPets(query)) {
+                actual.addAll(page);
+            }
+            assertEquals(expected, actual, prefix);
+        }
+    }
+
+    private static <T> List<T> runConcurrently(ThreadTask<T> task) throws Exception {
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            var futures = new ArrayList<Future<T>>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.run(thread);
+                }));
+            }
+            start.countDown();
+
+            var results = new ArrayList<T>();
+            for (var future : futures) {
+                results.add(future.get(60, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface ThreadTask<T> {
+        T run(int thread) throws Exception;
+    }
+}
@@ -0,0 +1,130 @@
+package dataaccess;
+
+import model.Pet;
+import model.PetList;
+import model.PetQuery;
+import model.PetType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PetSnapshotTest {
+    private static final String[] NAMES = {"joe", "jo", "sally", "sal", "fido", "édith", "zed"};
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void findsPetsById() throws IOException {
+        var pets = samplePets(200);
+        Path file = directory.resolve("snapshot");
+        PetSnapshot.write(file, pets, 500);
+
+        var snapshot = PetSnapshot.open(file);
+        assertEquals(pets.size(), snapshot.size());
+        assertEquals(500, snapshot.nextId());
+        for (Pet pet : pets) {
+            assertEquals(pet, snapshot.find(pet.id()));
+        }
+        assertNull(snapshot.find(1));
+        assertFalse(snapshot.contains(10_000));
+    }
+
+    @Test
+    void answersQueriesLikeMemoryStore() throws IOException {
+        var pets = samplePets(300);
+        var memory = new MemoryDataAccess();
+        memory.restore(pets);
+        Path file = directory.resolve("snapshot");
+        PetSnapshot.write(file, pets, memory.nextId());
+        var loaded = new MemoryDataAccess();
+        loaded.load(PetSnapshot.open(file));
+
+        assertEquals(memory.listPets(), loaded.listPets());
+        var queries = new ArrayList<PetQuery>();
+        for (int afterId : new int[]{0, 17, 300, 1000}) {
+            var query = new PetQuery(afterId, 25, null, null);
+            queries.add(query);
+            queries.add(query.ofType(PetType.CAT));
+            queries.add(query.named("jo"));
+            queries.add(query.named("s").ofType(PetType.DOG));
+            queries.add(query.named("é"));
+            queries.add(query.named("nobody"));
+            queries.add(query.named("sally"));
+            queries.add(query.named("édith").ofType(PetType.FROG));
+            queries.add(query.named("pet-1"));
+            queries.add(query.named("pet-12"));
+            queries.add(new PetQuery(afterId, 5, null, "pet-2"));
+        }
+        for (PetQuery query : queries) {
+            assertEquals(memory.listPets(query), loaded.listPets(query), query.toString());
+        }
+    }
+
+    @Test
+    void loadedStoreTakesWrites() throws IOException {
+        var pets = samplePets(50);
+        Path file = directory.resolve("snapshot");
+        PetSnapshot.write(file, pets, pets.getLast().id() + 1);
+        var store = new MemoryDataAccess();
+        store.load(PetSnapshot.open(file));
+
+        Pet first = pets.getFirst();
+        store.deletePet(first.id());
+        assertNull(store.getPet(first.id()));
+        Pet added = store.addPet(new Pet(0, "joe", PetType.CAT));
+        assertEquals(pets.getLast().id() + 1, added.id());
+        store.restore(List.of(new Pet(pets.get(1).id(), "renamed", PetType.ROCK)));
+
+        var expected = new PetList(pets.subList(1, pets.size()));
+        expected.set(0, new Pet(pets.get(1).id(), "renamed", PetType.ROCK));
+        expected.add(added);
+        assertEquals(expected, store.listPets());
+        assertEquals(expected.size(), store.size());
+        assertEquals(List.of(added), store.listPets(new PetQuery(100).named("jo").after(pets.getLast().id())));
+        assertEquals(List.of(expected.getFirst()), store.listPets(new PetQuery(100).named("ren").ofType(PetType.ROCK)));
+
+        store.deleteAllPets();
+        assertEquals(List.of(), store.listPets());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void rejectsDamagedFile() throws IOException {
+        Path file = directory.resolve("snapshot");
+        PetSnapshot.write(file, samplePets(20), 100);
+        try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.position(40);
+            channel.write(ByteBuffer.wrap(new byte[]{42}));
+        }
+        assertThrows(IOException.class, () -> PetSnapshot.open(file));
+
+        PetSnapshot.write(file, samplePets(20), 100);
+        try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 1);
+        }
+        assertThrows(IOException.class, () -> PetSnapshot.open(file));
+    }
+
+    /**
+     * Pets with gaps in their IDs, repeated and unique names, and some with no name or type.
+     */
+    private static PetList samplePets(int count) {
+        var pets = new PetList();
+        for (int i = 0; i < count; i++) {
+            String name = i % 11 == 0 ? null : i % 5 == 0 ? "pet-" + i : NAMES[i % NAMES.length];
+            PetType type = i % 13 == 0 ? null : PetType.values()[i % PetType.values().length];
+            pets.add(new Pet(3 * i + 2, name, type));
+        }
+        return pets;
+    }
+}
@@ -1,10 +1,28 @@
 package server;
 
+import dataaccess.MemoryDataAccess;
 import exception.ResponseException;
 import model.*;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.function.Executable;
+import serialization.Serializer;
+import service.PetService;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -37,6 +55,19 @@ class PetServerTest {
         assertPetEqual(joe, result);
     }
 
+    @Test
+    void getPet() throws Exception {
+        Pet joe = server.addPet(new Pet(0, "joe", PetType.CAT));
+        server.addPet(new Pet(0, "sally", PetType.DOG));
+
+        assertEquals(joe, assertDoesNotThrow(() -> server.getPet(joe.id())));
+        assertEquals(joe, new ServerFacade("http://localhost:" + petServer.port(), true).getPet(joe.id()));
+        assertNull(server.getPet(joe.id() + 100));
+
+        ResponseException error = assertThrows(ResponseException.class, () -> server.getPet(-1));
+        assertEquals(ResponseException.Code.ClientError, error.code());
+    }
+
     @Test
     void deletePet() throws Exception {
         var expected = new PetList();
@@ -59,6 +90,141 @@ class PetServerTest {
         assertPetCollectionEqual(expected, result);
     }
 
+    @Test
+    void listPetsByPage() throws Exception {
+        Pet joe = server.addPet(new Pet(0, "joe", PetType.CAT));
+        server.addPet(new Pet(0, "fido", PetType.DOG));
+        Pet jolene = server.addPet(new Pet(0, "jolene", PetType.CAT));
+        Pet josie = server.addPet(new Pet(0, "josie", PetType.CAT));
+
+        var query = new PetQuery(2).ofType(PetType.CAT).named("jo");
+        PetList page = assertDoesNotThrow(() -> server.listPets(query));
+        assertEquals(List.of(joe, jolene), page);
+        assertEquals(List.of(josie), server.listPets(query.next(page)));
+    }
+
+    @Test
+    void listPetsIgnoresOtherParams() throws Exception {
+        var pets = new PetList();
+        for (int i = 0; i < PetQuery.DEFAULT_LIMIT + 1; i++) {
+            pets.add(new Pet(0, "pet-" + i, PetType.FISH));
+        }
+        server.addPets(pets);
+
+        var uri = URI.create("http://localhost:" + petServer.port() + "/pet?_=123");
+        var response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        assertEquals(pets.size(), Serializer.fromJson(response.body(), Pet[].class).length);
+    }
+
+    @Test
+    void listPetsRejectsInvalidQuery() {
+        ResponseException error = assertThrows(ResponseException.class, () -> server.listPets(new PetQuery(0)));
+        assertEquals(ResponseException.Code.ClientError, error.code());
+    }
+
+    @Test
+    void listPetsNotModified() throws Exception {
+        var client = HttpClient.newHttpClient();
+        var uri = URI.create("http://localhost:" + petServer.port() + "/pet");
+        server.addPet(new Pet(0, "joe", PetType.CAT));
+
+        var first = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        var conditional = HttpRequest.newBuilder(uri).header("If-None-Match", etag).build();
+        var notModified = client.send(conditional, HttpResponse.BodyHandlers.ofString());
+        assertEquals(304, notModified.statusCode());
+        assertEquals("", notModified.body());
+
+        server.addPet(new Pet(0, "sally", PetType.CAT));
+        var modified = client.send(conditional, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, modified.statusCode());
+        assertNotEquals(etag, modified.headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    void listPetsCompressed() throws Exception {
+        var pets = new PetList();
+        for (int i = 0; i < 200; i++) {
+            pets.add(new Pet(0, "pet-" + i, PetType.FISH));
+        }
+        server.addPets(pets);
+
+        var client = HttpClient.newHttpClient();
+        var uri = URI.create("http://localhost:" + petServer.port() + "/pet");
+        var plain = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+
+        var gzipRequest = HttpRequest.newBuilder(uri).header("Accept-Encoding", "gzip").build();
+        var gzipped = client.send(gzipRequest, HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElseThrow());
+        assertTrue(gzipped.body().length < plain.body().length / 2);
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(gzipped.body()))) {
+            assertArrayEquals(plain.body(), in.readAllBytes());
+        }
+
+        var smallRequest = HttpRequest.newBuilder(URI.create(uri + "?limit=1")).header("Accept-Encoding", "gzip").build();
+        var small = client.send(smallRequest, HttpResponse.BodyHandlers.ofByteArray());
+        assertTrue(small.headers().firstValue("Content-Encoding").isEmpty());
+
+        assertPetCollectionEqual(pets, server.listPets());
+    }
+
+    @Test
+    void listPetsRevalidates() throws Exception {
+        var expected = new PetList();
+        expected.add(server.addPet(new Pet(0, "joe", PetType.CAT)));
+        assertPetCollectionEqual(expected, server.listPets());
+        assertPetCollectionEqual(expected, server.listPets());
+
+        expected.add(server.addPet(new Pet(0, "sally", PetType.CAT)));
+        assertPetCollectionEqual(expected, server.listPets());
+    }
+
+    @Test
+    void listChanges() throws Exception {
+        long start = server.lastChangeSequence();
+        Pet joe = server.addPet(new Pet(0, "joe", PetType.CAT));
+        server.deletePet(joe.id());
+        assertEquals(start + 2, server.lastChangeSequence());
+
+        PetChanges changes = server.listChanges(start);
+        assertEquals(List.of(PetChange.added(start + 1, joe), PetChange.removed(start + 2, joe)), changes.changes());
+        assertEquals(List.of(), server.listChanges(start + 2).changes());
+        assertEquals(changes.feed(), server.listChanges(start + 2).feed());
+
+        assertNull(server.listChanges(start + 3));
+    }
+
+    @Test
+    void addPets() throws Exception {
+        var expected = new PetList();
+        expected.add(new Pet(0, "joe", PetType.CAT));
+        expected.add(new Pet(0, "sally", PetType.FISH));
+
+        PetList added = assertDoesNotThrow(() -> server.addPets(expected));
+        assertPetCollectionEqual(expected, added);
+        assertPetCollectionEqual(expected, server.listPets());
+    }
+
+    @Test
+    void deletePets() throws Exception {
+        var expected = new PetList();
+        Pet joe = server.addPet(new Pet(0, "joe", PetType.CAT));
+        expected.add(server.addPet(new Pet(0, "sally", PetType.CAT)));
+        Pet fido = server.addPet(new Pet(0, "fido", PetType.DOG));
+
+        assertDoesNotThrow(() -> server.deletePets(List.of(joe.id(), fido.id())));
+        assertPetCollectionEqual(expected, server.listPets());
+
+        ResponseException error = assertThrows(ResponseException.class,
+                () -> server.deletePets(Arrays.asList(expected.getFirst().id(), null)));
+        assertEquals(ResponseException.Code.ClientError, error.code());
+        assertPetCollectionEqual(expected, server.listPets());
+    }
+
     @Test
     void invalidPetAddition() {
         // Dogs with fleas are not allowed
@@ -70,6 +236,102 @@ class PetServerTest {
         Assertions.assertEquals("Error: no dogs with fleas", error.getMessage());
     }
 
+    @Test
+    void nullPetsAreRejected() {
+        assertClientError(() -> server.addPets(Arrays.asList((Pet) null)));
+        assertClientError(() -> server.addPets(Arrays.asList(new Pet(0, "a", PetType.CAT), null)));
+        assertDoesNotThrow(() -> assertEquals(List.of(), server.listPets()));
+    }
+
+    @Test
+    void petsNeedNameAndType() {
+        assertClientError(() -> server.addPet(new Pet(0, null, PetType.DOG)));
+        assertClientError(() -> server.addPet(new Pet(0, "a", null)));
+        assertClientError(() -> server.addPets(List.of(new Pet(0, "joe", PetType.CAT), new Pet(0, "a", null))));
+        assertDoesNotThrow(() -> assertEquals(List.of(), server.listPets()));
+    }
+
+    private static void assertClientError(Executable request) {
+        ResponseException error = assertThrows(ResponseException.class, request);
+        assertEquals(ResponseException.Code.ClientError, error.code());
+    }
+
+    @Test
+    void binaryWireFormat() throws Exception {
+        var binary = new ServerFacade("http://localhost:" + petServer.port(), true);
+        var expected = new PetList();
+        expected.add(binary.addPet(new Pet(0, "joe", PetType.CAT)));
+        expected.addAll(binary.addPets(List.of(new Pet(0, "sally", PetType.DOG), new Pet(0, "fido", PetType.DOG))));
+        assertPetCollectionEqual(expected, binary.listPets());
+        assertEquals(expected, server.listPets());
+        assertEquals(List.of(expected.get(1)), binary.listPets(new PetQuery(1).ofType(PetType.DOG)));
+
+        binary.deletePets(List.of(expected.get(1).id(), expected.get(2).id()));
+        assertEquals(List.of(expected.getFirst()), binary.listPets());
+
+        ResponseException error = assertThrows(ResponseException.class,
+                () -> binary.addPet(new Pet(-1, "fleas", PetType.DOG)));
+        assertEquals(ResponseException.Code.ClientError, error.code());
+        assertEquals("Error: no dogs with fleas", error.getMessage());
+    }
+
+    @Test
+    void asyncRequests() throws Exception {
+        var facade = ServerFacade.builder("http://localhost:" + petServer.port())
+                .maxConcurrentRequests(8)
+                .requestTimeout(Duration.ofSeconds(10))
+                .build();
+
+        var futures = new ArrayList<CompletableFuture<Pet>>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(facade.addPetAsync(new Pet(0, "pet-" + i, PetType.FISH)));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        assertEquals(200, facade.listPetsAsync().join().size());
+
+        var fleas = facade.addPetAsync(new Pet(-1, "fleas", PetType.DOG));
+        var error = assertThrows(ExecutionException.class, fleas::get);
+        var cause = assertInstanceOf(ResponseException.class, error.getCause());
+        assertEquals(ResponseException.Code.ClientError, cause.code());
+    }
+
+    @Test
+    void virtualThreads() throws Exception {
+        assertEquals(List.of(true, true), handlerThreadsAreVirtual(ServerConfig.defaults().withVirtualThreads(true)));
+        assertEquals(List.of(false, false), handlerThreadsAreVirtual(ServerConfig.defaults()));
+    }
+
+    /**
+     * Adds and lists a pet on a server with the given config, returning whether the store
+     * was called from a virtual thread for each request.
+     */
+    private static List<Boolean> handlerThreadsAreVirtual(ServerConfig config) throws Exception {
+        var virtual = new CopyOnWriteArrayList<Boolean>();
+        var dataAccess = new MemoryDataAccess() {
+            @Override
+            public Pet addPet(Pet pet) {
+                virtual.add(Thread.currentThread().isVirtual());
+                return super.addPet(pet);
+            }
+
+            @Override
+            public void writePets(OutputStream out) throws ResponseException {
+                virtual.add(Thread.currentThread().isVirtual());
+                super.writePets(out);
+            }
+        };
+        var threadServer = new PetServer(new PetService(dataAccess), config).run(0);
+        try {
+            var facade = new ServerFacade("http://localhost:" + threadServer.port());
+            var expected = new PetList();
+            expected.add(facade.addPet(new Pet(0, "joe", PetType.CAT)));
+            assertPetCollectionEqual(expected, facade.listPets());
+        } finally {
+            threadServer.stop();
+        }
+        return virtual;
+    }
+
     public static void assertPetEqual(Pet expected, Pet actual) {
         assertEquals(expected.name(), actual.name());
         assertEquals(expected.type(), actual.type());
@@ -0,0 +1,385 @@
+package server.websocket;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.junit.jupiter.api.Test;
+import serialization.Serializer;
+import webSocketMessages.Notification;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionManagerTest {
+    private static final int SESSIONS = 10_000;
+
+    @Test
+    void tenThousandSessionsReceiveEveryNotificationInOrder() throws Exception {
+        ExecutorService network = Executors.newFixedThreadPool(4);
+        try (var manager = new ConnectionManager()) {
+            var sessions = new ArrayList<FakeSession>();
+            for (int i = 0; i < SESSIONS; i++) {
+                // Half the sessions complete their writes on another thread, like a real network would.
+                var session = new FakeSession(i % 2 == 0 ? Mode.INLINE : Mode.ASYNC, network);
+                sessions.add(session);
+                manager.add(session.session);
+            }
+
+            int notifications = 20;
+            for (int n = 0; n < notifications; n++) {
+                manager.broadcast(null, noise(n));
+            }
+
+            waitFor(() -> manager.metrics().delivered() == (long) SESSIONS * notifications);
+            var expected = new ArrayList<String>();
+            for (int n = 0; n < notifications; n++) {
+                expected.add(noise(n).toString());
+            }
+            for (var session : sessions) {
+                assertEquals(expected, session.received());
+            }
+            assertEquals(new ConnectionManager.Metrics(SESSIONS, (long) SESSIONS * notifications, 0, 0), manager.metrics());
+        } finally {
+            network.shutdownNow();
+        }
+    }
+
+    @Test
+    void slowSessionDoesNotHoldUpOthers() {
+        var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run);
+        var slow = new FakeSession(Mode.STALLED, null);
+        var fast = new FakeSession(Mode.INLINE, null);
+        manager.add(slow.session);
+        manager.add(fast.session);
+
+        for (int n = 0; n < 10; n++) {
+            manager.broadcast(null, noise(n));
+        }
+
+        assertEquals(10, fast.received().size());
+        assertEquals(1, slow.received().size());
+    }
+
+    @Test
+    void dropOldestKeepsTheNewestNotifications() {
+        var config = new ConnectionManager.Config(4, ConnectionManager.OverflowPolicy.DROP_OLDEST);
+        var manager = new ConnectionManager(config, Runnable::run);
+        var slow = new FakeSession(Mode.STALLED, null);
+        manager.add(slow.session);
+
+        for (int n = 0; n < 10; n++) {
+            manager.broadcast(null, noise(n));
+        }
+        while (slow.completeNext()) {
+            // Let the client catch up one write at a time.
+        }
+
+        var expected = List.of(noise(0).toString(), noise(6).toString(), noise(7).toString(), noise(8).toString(), noise(9).toString());
+        assertEquals(expected, slow.received());
+        assertEquals(5, manager.metrics().dropped());
+        assertEquals(1, manager.metrics().sessions());
+    }
+
+    @Test
+    void disconnectPolicyClosesSlowSessions() {
+        var config = new ConnectionManager.Config(2, ConnectionManager.OverflowPolicy.DISCONNECT);
+        var manager = new ConnectionManager(config, Runnable::run);
+        var slow = new FakeSession(Mode.STALLED, null);
+        var fast = new FakeSession(Mode.INLINE, null);
+        manager.add(slow.session);
+        manager.add(fast.session);
+
+        for (int n = 0; n < 5; n++) {
+            manager.broadcast(null, noise(n));
+        }
+
+        assertEquals(StatusCode.POLICY_VIOLATION, slow.closeStatus);
+        assertEquals(5, fast.received().size());
+        assertEquals(1, manager.metrics().sessions());
+        assertEquals(1, manager.metrics().disconnected());
+    }
+
+    @Test
+    void failedSessionIsRemovedWithoutAffectingOthers() {
+        var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run);
+        var broken = new FakeSession(Mode.FAILING, null);
+        var healthy = new FakeSession(Mode.INLINE, null);
+        manager.add(broken.session);
+        manager.add(healthy.session);
+
+        manager.broadcast(null, noise(0));
+        manager.broadcast(null, noise(1));
+
+        assertEquals(2, healthy.received().size());
+        assertEquals(1, manager.metrics().sessions());
+        assertEquals(1, manager.metrics().disconnected());
+    }
+
+    @Test
+    void broadcastSkipsExcludedSession() {
+        var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run);
+        var visitor = new FakeSession(Mode.INLINE, null);
+        var other = new FakeSession(Mode.INLINE, null);
+        manager.add(visitor.session);
+        manager.add(other.session);
+
+        manager.broadcast(visitor.session, noise(0));
+
+        assertEquals(0, visitor.received().size());
+        assertEquals(1, other.received().size());
+    }
+
+    @Test
+    void topicsOnlyReachSubscribers() {
+        var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run);
+        var cats = new FakeSession(Mode.INLINE, null);
+        var visitors = new FakeSession(Mode.INLINE, null);
+        var everything = new FakeSession(Mode.INLINE, null);
+        manager.subscribe(cats.session, "pet-type:CAT");
+        manager.subscribe(visitors.session, "visitors");
+        manager.add(everything.session);
+
+        manager.broadcast(null, noise(0), List.of("pets", "pet-type:CAT", "pet:1"));
+        manager.broadcast(null, noise(1), List.of("pets", "pet-type:DOG", "pet:2"));
+        manager.broadcast(null, noise(2), List.of("visitors"));
+
+        assertEquals(List.of(noise(0).toString()), cats.received());
+        assertEquals(List.of(noise(2).toString()), visitors.received());
+        assertEquals(3, everything.received().size());
+    }
+
+    @Test
+    void overlappingSubscriptionsReceiveOneCopy() {
+        var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run);
+        var session = new FakeSession(Mode.INLINE, null);
+        manager.subscribe(session.session, "pets");
+        manager.subscribe(session.session, "pet:1");
+
+        manager.broadcast(null, noise(0), Set.of("pets", "pet:1"));
+
+        assertEquals(1, session.received().size());
+    }
+
+    @Test
+    void unsubscribingFromEverythingReceivesEverythingAgain() {
+        var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run);
+        var session = new FakeSession(Mode.INLINE, null);
+        manager.subscribe(session.session, "visitors");
+
+        manager.broadcast(null, noise(0), List.of("pets"));
+        manager.unsubscribe(session.session, "visitors");
+        manager.broadcast(null, noise(1), List.of("pets"));
+
+        assertEquals(List.of(noise(1).toString()), session.received());
+    }
+
+    @Test
+    void removedSessionLeavesItsTopics() {
+        var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run);
+        var session = new FakeSession(Mode.INLINE, null);
+        manager.subscribe(session.session, "pet:1");
+
+        manager.remove(session.session);
+        manager.broadcast(null, noise(0), List.of("pet:1"));
+
+        assertEquals(0, session.received().size());
+        assertEquals(0, manager.metrics().sessions());
+    }
+
+    @Test
+    void batchIsSentWhenFull() {
+        var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run);
+        var session = new FakeSession(Mode.INLINE, null);
+        manager.batch(session.session, Duration.ofHours(1), 3);
+
+        for (int n = 0; n < 5; n++) {
+            manager.broadcast(null, noise(n));
+        }
+        assertEquals(List.of(Notification.batch(List.of(noise(0), noise(1), noise(2)))), notifications(session));
+
+        // Turning batching off sends what is still held.
+        manager.batch(session.session, Duration.ZERO, 0);
+        assertEquals(Notification.batch(List.of(noise(3), noise(4))), notifications(session).getLast());
+
+        manager.broadcast(null, noise(5));
+        assertEquals(noise(5), notifications(session).getLast());
+    }
+
+    @Test
+    void batchIsSentAfterWindow() throws Exception {
+        try (var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run)) {
+            var session = new FakeSession(Mode.INLINE, null);
+            manager.batch(session.session, Duration.ofMillis(20), 100);
+
+            for (int n = 0; n < 3; n++) {
+                manager.broadcast(null, noise(n));
+            }
+            waitFor(() -> session.received().size() == 1);
+
+            assertEquals(List.of(Notification.batch(List.of(noise(0), noise(1), noise(2)))), notifications(session));
+        }
+    }
+
+    @Test
+    void framesShareOneEncoding() {
+        var frames = new ArrayList<Frame>();
+        var core = new CoreSession.Empty() {
+            @Override
+            public void sendFrame(Frame frame, Callback callback, boolean batch) {
+                frames.add(frame);
+                callback.succeeded();
+            }
+        };
+        var manager = new ConnectionManager(ConnectionManager.Config.defaults(), Runnable::run) {
+            @Override
+            protected CoreSession coreSessionOf(Session session) {
+                return core;
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            manager.add(new FakeSession(Mode.INLINE, null).session);
+        }
+
+        manager.broadcast(null, noise(0));
+
+        assertEquals(3, frames.size());
+        for (var frame : frames) {
+            assertEquals(OpCode.TEXT, frame.getOpCode());
+            assertTrue(frame.getPayload().isReadOnly());
+            assertEquals(noise(0).toString(), frame.getPayloadAsUTF8());
+        }
+        assertNotSame(frames.get(0).getPayload(), frames.get(1).getPayload());
+        assertEquals(3, manager.metrics().delivered());
+    }
+
+    private static List<Notification> notifications(FakeSession session) {
+        return session.received().stream().map(json -> Serializer.fromJson(json, Notification.class)).toList();
+    }
+
+    private static Notification noise(int n) {
+        return new Notification(Notification.Type.NOISE, "pet " + n + " says meow");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for delivery");
+            Thread.sleep(10);
+        }
+    }
+
+    private enum Mode {
+        INLINE,
+        ASYNC,
+        STALLED,
+        FAILING
+    }
+
+    /**
+     * A session whose non-blocking writes complete immediately, on another thread, only when
+     * the test says so, or fail.
+     */
+    private static class FakeSession {
+        private final Mode mode;
+        private final ExecutorService network;
+        private final List<String> received = new ArrayList<>();
+        private final ArrayDeque<WriteCallback> pending = new ArrayDeque<>();
+        private volatile boolean open = true;
+        private volatile int closeStatus = 0;
+        final Session session;
+
+        FakeSession(Mode mode, ExecutorService network) {
+            this.mode = mode;
+            this.network = network;
+            RemoteEndpoint remote = proxy(RemoteEndpoint.class, (method, args) -> {
+                if (method.equals("sendString")) {
+                    send((String) args[0], (WriteCallback) args[1]);
+                }
+                return null;
+            });
+            session = proxy(Session.class, (method, args) -> switch (method) {
+                case "getRemote" -> remote;
+                case "isOpen" -> open;
+                case "close" -> {
+                    open = false;
+                    closeStatus = args != null && args.length > 0 ? (int) args[0] : StatusCode.NORMAL;
+                    yield null;
+                }
+                default -> null;
+            });
+        }
+
+        synchronized List<String> received() {
+            return new ArrayList<>(received);
+        }
+
+        /**
+         * Completes the oldest stalled write, returning false if there is none.
+         */
+        boolean completeNext() {
+            WriteCallback callback;
+            synchronized (this) {
+                callback = pending.pollFirst();
+            }
+            if (callback == null) {
+                return false;
+            }
+            callback.writeSuccess();
+            return true;
+        }
+
+        private void send(String message, WriteCallback callback) {
+            switch (mode) {
+                case INLINE -> {
+                    record(message);
+                    callback.writeSuccess();
+                }
+                case ASYNC -> network.execute(() -> {
+                    record(message);
+                    callback.writeSuccess();
+                });
+                case STALLED -> {
+                    synchronized (this) {
+                        received.add(message);
+                        pending.addLast(callback);
+                    }
+                }
+                case FAILING -> callback.writeFailed(new IOException("connection reset"));
+            }
+        }
+
+        private synchronized void record(String message) {
+            received.add(message);
+        }
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) ->
+                switch (method.getName()) {
+                    case "equals" -> self == args[0];
+                    case "hashCode" -> System.identityHashCode(self);
+                    case "toString" -> type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+                    default -> handler.invoke(method.getName(), args);
+                });
+        return type.cast(proxy);
+    }
+}
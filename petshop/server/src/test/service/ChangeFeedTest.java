@@ -0,0 +1,109 @@
+package service;
+
+import model.Pet;
+import model.PetChange;
+import model.PetType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+    private static final Pet JOE = new Pet(1, "joe", PetType.CAT);
+    private static final Pet SALLY = new Pet(2, "sally", PetType.DOG);
+
+    @Test
+    void numbersChangesInOrder() {
+        var feed = new ChangeFeed();
+        var published = new ArrayList<PetChange>();
+        feed.addListener(published::addAll);
+
+        feed.added(feed.reserve(), List.of(JOE, SALLY));
+        feed.removed(feed.reserve(), List.of(JOE));
+        feed.cleared(feed.reserve());
+
+        var expected = List.of(PetChange.added(1, JOE), PetChange.added(2, SALLY),
+                PetChange.removed(3, JOE), PetChange.cleared(4));
+        assertEquals(expected, published);
+        assertEquals(4, feed.lastSequence());
+        assertEquals(expected, feed.since(0));
+        assertEquals(expected.subList(2, 4), feed.since(2));
+        assertEquals(List.of(), feed.since(4));
+    }
+
+    @Test
+    void forgetsOldestChanges() {
+        var feed = new ChangeFeed(3);
+        var pets = new ArrayList<Pet>();
+        for (int id = 1; id <= 5; id++) {
+            pets.add(new Pet(id, "joe", PetType.CAT));
+            feed.removed(feed.reserve(), List.of(pets.getLast()));
+        }
+
+        assertNull(feed.since(0));
+        assertNull(feed.since(1));
+        assertEquals(List.of(PetChange.removed(3, pets.get(2)), PetChange.removed(4, pets.get(3)), PetChange.removed(5, pets.get(4))), feed.since(2));
+    }
+
+    @Test
+    void rejectsSequenceFromAnotherFeed() {
+        var feed = new ChangeFeed();
+        feed.cleared(feed.reserve());
+
+        assertNull(feed.since(2));
+        assertNotEquals(feed.id(), new ChangeFeed().id());
+    }
+
+    @Test
+    void removedListenerHearsNothing() {
+        var feed = new ChangeFeed();
+        var published = new ArrayList<PetChange>();
+        Consumer<List<PetChange>> listener = published::addAll;
+        feed.addListener(listener);
+        feed.removeListener(listener);
+
+        feed.added(feed.reserve(), List.of(JOE));
+        assertEquals(List.of(), published);
+    }
+
+    @Test
+    void largeWriteIsOneResync() {
+        var feed = new ChangeFeed(10, 2);
+        var published = new ArrayList<PetChange>();
+        feed.addListener(published::addAll);
+
+        feed.added(feed.reserve(), List.of(JOE, SALLY));
+        feed.removed(feed.reserve(), List.of(JOE, SALLY, new Pet(3, "fido", PetType.DOG)));
+
+        var expected = List.of(PetChange.added(1, JOE), PetChange.added(2, SALLY), PetChange.resync(3));
+        assertEquals(expected, published);
+        assertEquals(expected, feed.since(0));
+        assertThrows(IllegalArgumentException.class, () -> new ChangeFeed(10, 11));
+    }
+
+    @Test
+    void reportsWaitForEarlierTickets() throws Exception {
+        var feed = new ChangeFeed();
+        var published = new CopyOnWriteArrayList<PetChange>();
+        feed.addListener(published::addAll);
+
+        long first = feed.reserve();
+        long cancelled = feed.reserve();
+        long third = feed.reserve();
+        var late = new Thread(() -> feed.added(third, List.of(SALLY)));
+        late.start();
+        feed.cancelled(cancelled);
+        late.join(100);
+        assertTrue(late.isAlive());
+        assertEquals(List.of(), published);
+
+        feed.added(first, List.of(JOE));
+        late.join();
+        assertEquals(List.of(PetChange.added(1, JOE), PetChange.added(2, SALLY)), published);
+        assertEquals(2, feed.lastSequence());
+    }
+}
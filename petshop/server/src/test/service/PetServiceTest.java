@@ -3,6 +3,8 @@ package service;
 import dataaccess.MemoryDataAccess;
 import exception.ResponseException;
 import model.Pet;
+import model.PetChange;
+import model.PetQuery;
 import model.PetType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -42,6 +45,24 @@ class PetServiceTest {
         assertIterableEquals(expected, actual);
     }
 
+    @Test
+    void listPetsByPage() throws ResponseException {
+        Pet joe = service.addPet(new Pet(0, "joe", PetType.FISH));
+        Pet sally = service.addPet(new Pet(0, "sally", PetType.CAT));
+        Pet fido = service.addPet(new Pet(0, "fido", PetType.DOG));
+
+        var query = new PetQuery(2);
+        var page = service.listPets(query);
+        assertIterableEquals(List.of(joe, sally), page);
+        assertIterableEquals(List.of(fido), service.listPets(query.next(page)));
+    }
+
+    @Test
+    void listPetsRejectsInvalidLimit() {
+        assertThrows(ResponseException.class, () -> service.listPets(new PetQuery(0)));
+        assertThrows(ResponseException.class, () -> service.listPets(new PetQuery(PetQuery.MAX_LIMIT + 1)));
+    }
+
     @Test
     void deletePet() throws ResponseException {
         List<Pet> expected = new ArrayList<>();
@@ -64,6 +85,98 @@ class PetServiceTest {
         assertEquals(0, service.listPets().size());
     }
 
+    @Test
+    void addPets() throws ResponseException {
+        List<Pet> expected = service.addPets(List.of(
+                new Pet(0, "joe", PetType.FISH),
+                new Pet(0, "sally", PetType.CAT)));
+
+        assertIterableEquals(expected, service.listPets());
+    }
+
+    @Test
+    void addPetsRejectsWholeBatch() {
+        assertThrows(ResponseException.class, () -> service.addPets(List.of(
+                new Pet(0, "joe", PetType.FISH),
+                new Pet(0, "fleas", PetType.DOG))));
+        assertDoesNotThrow(() -> assertEquals(0, service.listPets().size()));
+    }
+
+    @Test
+    void deletePets() throws ResponseException {
+        Pet joe = service.addPet(new Pet(0, "joe", PetType.FISH));
+        Pet sally = service.addPet(new Pet(0, "sally", PetType.CAT));
+        Pet fido = service.addPet(new Pet(0, "fido", PetType.DOG));
+
+        service.deletePets(List.of(joe.id(), fido.id()));
+        assertIterableEquals(List.of(sally), service.listPets());
+    }
+
+    @Test
+    void recordsChanges() throws ResponseException {
+        long start = service.changes().lastSequence();
+        Pet joe = service.addPet(new Pet(0, "joe", PetType.FISH));
+        List<Pet> more = service.addPets(List.of(new Pet(0, "sally", PetType.CAT), new Pet(0, "fido", PetType.DOG)));
+        service.deletePet(joe.id());
+        service.deletePets(List.of(more.getFirst().id(), joe.id()));
+        // Deleting pets that are already gone is not a change.
+        assertNull(service.deletePet(joe.id()));
+        assertEquals(List.of(), service.deletePets(List.of(joe.id())));
+        service.deleteAllPets();
+        assertThrows(ResponseException.class, () -> service.addPet(new Pet(0, "fleas", PetType.DOG)));
+
+        assertEquals(List.of(
+                PetChange.added(start + 1, joe),
+                PetChange.added(start + 2, more.get(0)),
+                PetChange.added(start + 3, more.get(1)),
+                PetChange.removed(start + 4, joe),
+                PetChange.removed(start + 5, more.get(0)),
+                PetChange.cleared(start + 6)), service.changes().since(start));
+    }
+
+    @Test
+    void concurrentChangesReplayToStore() throws Exception {
+        long start = service.changes().lastSequence();
+        var threads = new ArrayList<Thread>();
+        var failures = new ArrayList<Throwable>();
+        for (int t = 0; t < 8; t++) {
+            var thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        Pet pet = service.addPet(new Pet(0, "joe", PetType.CAT));
+                        if (i % 2 == 0) {
+                            // Other threads may delete it first, in which case this is a no-op.
+                            service.deletePets(List.of(pet.id(), pet.id() + 1));
+                        }
+                        if (i % 50 == 49) {
+                            service.deleteAllPets();
+                        }
+                    }
+                } catch (Throwable ex) {
+                    synchronized (failures) {
+                        failures.add(ex);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), failures);
+
+        var replica = new TreeMap<Integer, Pet>();
+        for (PetChange change : service.changes().since(start)) {
+            switch (change.operation()) {
+                case ADD -> assertNull(replica.put(change.id(), change.pet()));
+                case REMOVE -> assertEquals(change.pet(), replica.remove(change.id()));
+                case CLEAR -> replica.clear();
+            }
+        }
+        assertIterableEquals(service.listPets(), replica.values());
+    }
+
     @Test
     void noDogsWithFleas() {
         assertThrows(ResponseException.class, () ->
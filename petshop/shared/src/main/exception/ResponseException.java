@@ -1,6 +1,6 @@
 package exception;
 
-import com.google.gson.Gson;
+import serialization.Serializer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -20,11 +20,11 @@ public class ResponseException extends Exception {
     }
 
     public String toJson() {
-        return new Gson().toJson(Map.of("message", getMessage(), "status", code));
+        return Serializer.toJson(Map.of("message", getMessage(), "status", code));
     }
 
     public static ResponseException fromJson(String json) {
-        var map = new Gson().fromJson(json, HashMap.class);
+        var map = Serializer.fromJson(json, HashMap.class);
         var status = Code.valueOf(map.get("status").toString());
         String message = map.get("message").toString();
         return new ResponseException(status, message);
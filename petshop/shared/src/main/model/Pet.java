@@ -1,6 +1,6 @@
 package model;
 
-import com.google.gson.*;
+import serialization.Serializer;
 
 public record Pet(int id, String name, PetType type) {
 
@@ -21,6 +21,6 @@ public record Pet(int id, String name, PetType type) {
     }
 
     public String toString() {
-        return new Gson().toJson(this);
+        return Serializer.toJson(this);
     }
 }
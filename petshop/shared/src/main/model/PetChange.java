@@ -0,0 +1,33 @@
+package model;
+
+/**
+ * One change to the shop's pets, numbered in the order the changes were made. Applying every
+ * change in sequence order to a copy of the pets keeps it the same as the server's.
+ * ADD carries the pet that was added, REMOVE the pet as it was when it was removed, and CLEAR
+ * neither. RESYNC stands for a write that changed too many pets to list one by one, and
+ * means a copy must list the pets again.
+ */
+public record PetChange(long sequence, Operation operation, int id, Pet pet) {
+    public enum Operation {
+        ADD,
+        REMOVE,
+        CLEAR,
+        RESYNC
+    }
+
+    public static PetChange added(long sequence, Pet pet) {
+        return new PetChange(sequence, Operation.ADD, pet.id(), pet);
+    }
+
+    public static PetChange removed(long sequence, Pet pet) {
+        return new PetChange(sequence, Operation.REMOVE, pet.id(), pet);
+    }
+
+    public static PetChange cleared(long sequence) {
+        return new PetChange(sequence, Operation.CLEAR, 0, null);
+    }
+
+    public static PetChange resync(long sequence) {
+        return new PetChange(sequence, Operation.RESYNC, 0, null);
+    }
+}
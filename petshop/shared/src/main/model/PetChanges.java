@@ -0,0 +1,10 @@
+package model;
+
+import java.util.List;
+
+/**
+ * The changes a feed has made since some sequence number, and the ID of the feed, which
+ * changes when the server restarts and its sequence numbers start again.
+ */
+public record PetChanges(String feed, List<PetChange> changes) {
+}
@@ -1,9 +1,11 @@
 package model;
 
-import com.google.gson.Gson;
+import serialization.Serializer;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.io.Serial;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 public class PetList extends ArrayList<Pet> {
     public PetList() {
@@ -14,7 +16,113 @@ public class PetList extends ArrayList<Pet> {
         super(pets);
     }
 
+    /**
+     * A copy of the pets that throws UnsupportedOperationException on any attempt to change
+     * it, so that one list can be shared between callers. A list that is already unmodifiable
+     * is returned as it is.
+     */
+    public static PetList unmodifiable(Collection<Pet> pets) {
+        return pets instanceof Unmodifiable list ? list : new Unmodifiable(pets);
+    }
+
     public String toString() {
-        return new Gson().toJson(this.toArray());
+        return Serializer.toJson(this);
+    }
+
+    private static final class Unmodifiable extends PetList {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        Unmodifiable(Collection<Pet> pets) {
+            super(pets);
+        }
+
+        public boolean add(Pet pet) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void add(int index, Pet pet) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean addAll(Collection<? extends Pet> pets) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean addAll(int index, Collection<? extends Pet> pets) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Pet set(int index, Pet pet) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Pet remove(int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean remove(Object pet) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean removeAll(Collection<?> pets) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean retainAll(Collection<?> pets) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean removeIf(Predicate<? super Pet> filter) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void replaceAll(UnaryOperator<Pet> operator) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void sort(Comparator<? super Pet> comparator) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void clear() {
+            throw new UnsupportedOperationException();
+        }
+
+        protected void removeRange(int fromIndex, int toIndex) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Pet removeFirst() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Pet removeLast() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void addFirst(Pet pet) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void addLast(Pet pet) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Iterator<Pet> iterator() {
+            return listIterator(0);
+        }
+
+        public ListIterator<Pet> listIterator() {
+            return listIterator(0);
+        }
+
+        public ListIterator<Pet> listIterator(int index) {
+            return Collections.unmodifiableList(super.subList(0, size())).listIterator(index);
+        }
+
+        public List<Pet> subList(int fromIndex, int toIndex) {
+            return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
+        }
     }
-}
\ No newline at end of file
+}
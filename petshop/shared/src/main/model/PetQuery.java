@@ -0,0 +1,43 @@
+package model;
+
+/**
+ * Selects one page of pets in ID order. A page holds at most limit pets with an ID
+ * greater than afterId, so the next page is requested by passing the last ID of the
+ * current page rather than an offset. The type and name prefix filters are optional.
+ */
+public record PetQuery(int afterId, int limit, PetType type, String namePrefix) {
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    public PetQuery(int limit) {
+        this(0, limit, null, null);
+    }
+
+    public PetQuery() {
+        this(DEFAULT_LIMIT);
+    }
+
+    public PetQuery after(int id) {
+        return new PetQuery(id, limit, type, namePrefix);
+    }
+
+    public PetQuery ofType(PetType type) {
+        return new PetQuery(afterId, limit, type, namePrefix);
+    }
+
+    public PetQuery named(String namePrefix) {
+        return new PetQuery(afterId, limit, type, namePrefix);
+    }
+
+    /**
+     * Returns the query for the page that follows the given page of results.
+     */
+    public PetQuery next(PetList page) {
+        return page.isEmpty() ? this : after(page.getLast().id());
+    }
+
+    public boolean matches(Pet pet) {
+        return (type == null || type == pet.type())
+                && (namePrefix == null || (pet.name() != null && pet.name().startsWith(namePrefix)));
+    }
+}
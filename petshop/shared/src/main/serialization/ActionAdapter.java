@@ -0,0 +1,68 @@
+package serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import webSocketMessages.Action;
+
+import java.io.IOException;
+
+import static serialization.Adapters.*;
+
+class ActionAdapter extends TypeAdapter<Action> {
+    @Override
+    public void write(JsonWriter out, Action action) throws IOException {
+        out.beginObject();
+        writeEnum(out, "type", action.type());
+        writeString(out, "visitorName", action.visitorName());
+        writeString(out, "topic", action.topic());
+        if (action.batching() != null) {
+            out.name("batching").beginObject();
+            out.name("windowMillis").value(action.batching().windowMillis());
+            out.name("maxItems").value(action.batching().maxItems());
+            out.endObject();
+        }
+        out.endObject();
+    }
+
+    @Override
+    public Action read(JsonReader in) throws IOException {
+        Action.Type type = null;
+        String visitorName = null;
+        String topic = null;
+        Action.Batching batching = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "type" -> type = readEnum(in, Action.Type.class);
+                case "visitorName" -> visitorName = readString(in);
+                case "topic" -> topic = readString(in);
+                case "batching" -> batching = readBatching(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Action(type, visitorName, topic, batching);
+    }
+
+    private Action.Batching readBatching(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int windowMillis = 0;
+        int maxItems = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "windowMillis" -> windowMillis = in.nextInt();
+                case "maxItems" -> maxItems = in.nextInt();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Action.Batching(windowMillis, maxItems);
+    }
+}
@@ -0,0 +1,49 @@
+package serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Helpers shared by the hand-written type adapters. They follow Gson's reflective
+ * behavior: null fields are omitted when writing, and unknown enum constants read
+ * as null.
+ */
+final class Adapters {
+    private Adapters() {
+    }
+
+    static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    static void writeEnum(JsonWriter out, String name, Enum<?> value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value.name());
+        }
+    }
+
+    static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    static <E extends Enum<E>> E readEnum(JsonReader in, Class<E> type) throws IOException {
+        String name = readString(in);
+        if (name == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package serialization;
+
+import exception.ResponseException;
+import model.Pet;
+import model.PetList;
+import model.PetType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A compact binary alternative to the JSON wire format, for clients that ask for it with
+ * {@value #CONTENT_TYPE}. The encoding is a subset of MessagePack, so any MessagePack
+ * library can read it, with each object written as an array of its fields in a fixed order
+ * rather than as a map of names to values:
+ * <ul>
+ *     <li>{@link Pet}: {@code [id, name, type]}, where the type is the enum constant's name</li>
+ *     <li>{@link PetList}, or any collection or array: an array of its elements</li>
+ *     <li>{@link ResponseException}: {@code [status, message]}, matching its JSON fields</li>
+ * </ul>
+ * Decoding throws IllegalArgumentException if the bytes are not a value of the requested type.
+ */
+public final class BinaryCodec {
+    public static final String CONTENT_TYPE = "application/x-msgpack";
+
+    private static final int NIL = 0xc0;
+    private static final int UINT8 = 0xcc;
+    private static final int UINT16 = 0xcd;
+    private static final int UINT32 = 0xce;
+    private static final int INT8 = 0xd0;
+    private static final int INT16 = 0xd1;
+    private static final int INT32 = 0xd2;
+    private static final int STR8 = 0xd9;
+    private static final int STR16 = 0xda;
+    private static final int STR32 = 0xdb;
+    private static final int ARRAY16 = 0xdc;
+    private static final int ARRAY32 = 0xdd;
+
+    private BinaryCodec() {
+    }
+
+    public static byte[] encode(Object value) {
+        var out = new Writer();
+        out.value(value);
+        return out.toByteArray();
+    }
+
+    public static <T> T decode(byte[] bytes, Class<T> type) {
+        var in = new Reader(bytes);
+        Object result;
+        if (type == Pet.class) {
+            result = in.pet();
+        } else if (type == PetList.class) {
+            int size = in.arrayHeader();
+            var pets = new PetList();
+            for (int i = 0; i < size; i++) {
+                pets.add(in.pet());
+            }
+            result = pets;
+        } else if (type == Integer[].class) {
+            var ints = new Integer[in.arrayHeader()];
+            for (int i = 0; i < ints.length; i++) {
+                ints[i] = in.integer();
+            }
+            result = ints;
+        } else if (type == ResponseException.class) {
+            in.expectArray(2);
+            var status = ResponseException.Code.valueOf(in.string());
+            result = new ResponseException(status, in.nullableString());
+        } else {
+            throw new IllegalArgumentException("Cannot decode " + type.getName());
+        }
+        if (in.remaining() != 0) {
+            throw new IllegalArgumentException("Unexpected bytes after the value");
+        }
+        return type.cast(result);
+    }
+
+    private static class Writer {
+        private byte[] buffer = new byte[64];
+        private int size = 0;
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        void value(Object value) {
+            switch (value) {
+                case null -> write(NIL);
+                case Integer i -> integer(i);
+                case String s -> string(s);
+                case Pet pet -> pet(pet);
+                case ResponseException ex -> {
+                    arrayHeader(2);
+                    string(ex.code().name());
+                    value(ex.getMessage());
+                }
+                case Collection<?> collection -> {
+                    arrayHeader(collection.size());
+                    for (Object element : collection) {
+                        value(element);
+                    }
+                }
+                case Object[] array -> {
+                    arrayHeader(array.length);
+                    for (Object element : array) {
+                        value(element);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Cannot encode " + value.getClass().getName());
+            }
+        }
+
+        void pet(Pet pet) {
+            arrayHeader(3);
+            integer(pet.id());
+            value(pet.name());
+            value(pet.type() == null ? null : pet.type().name());
+        }
+
+        void integer(int value) {
+            if (value >= 0 && value < 0x80) {
+                write(value);
+            } else if (value < 0 && value >= -32) {
+                write(value & 0xff);
+            } else if (value >= 0 && value <= 0xffff) {
+                write(value <= 0xff ? UINT8 : UINT16);
+                writeN(value, value <= 0xff ? 1 : 2);
+            } else {
+                write(INT32);
+                writeN(value, 4);
+            }
+        }
+
+        void string(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            int length = utf8.length;
+            if (length < 32) {
+                write(0xa0 | length);
+            } else if (length <= 0xff) {
+                write(STR8);
+                writeN(length, 1);
+            } else if (length <= 0xffff) {
+                write(STR16);
+                writeN(length, 2);
+            } else {
+                write(STR32);
+                writeN(length, 4);
+            }
+            ensure(length);
+            System.arraycopy(utf8, 0, buffer, size, length);
+            size += length;
+        }
+
+        void arrayHeader(int length) {
+            if (length < 16) {
+                write(0x90 | length);
+            } else if (length <= 0xffff) {
+                write(ARRAY16);
+                writeN(length, 2);
+            } else {
+                write(ARRAY32);
+                writeN(length, 4);
+            }
+        }
+
+        private void write(int b) {
+            ensure(1);
+            buffer[size++] = (byte) b;
+        }
+
+        /**
+         * Writes the low bytes of the value in big-endian order.
+         */
+        private void writeN(int value, int bytes) {
+            ensure(bytes);
+            for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position = 0;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int remaining() {
+            return bytes.length - position;
+        }
+
+        Pet pet() {
+            expectArray(3);
+            int id = integer();
+            String name = nullableString();
+            String type = nullableString();
+            return new Pet(id, name, type == null ? null : PetType.valueOf(type));
+        }
+
+        void expectArray(int length) {
+            int actual = arrayHeader();
+            if (actual != length) {
+                throw new IllegalArgumentException(String.format("Expected an array of %d, not %d", length, actual));
+            }
+        }
+
+        int arrayHeader() {
+            int b = read();
+            int length;
+            if ((b & 0xf0) == 0x90) {
+                length = b & 0x0f;
+            } else {
+                length = switch (b) {
+                    case ARRAY16 -> readN(2);
+                    case ARRAY32 -> length(readN(4));
+                    default -> throw unexpected(b, "an array");
+                };
+            }
+            // Every element takes at least a byte, so a corrupt length cannot cause a huge allocation.
+            require(length);
+            return length;
+        }
+
+        int integer() {
+            int b = read();
+            if (b < 0x80) {
+                return b;
+            }
+            if (b >= 0xe0) {
+                return (byte) b;
+            }
+            return switch (b) {
+                case UINT8 -> readN(1);
+                case UINT16 -> readN(2);
+                case UINT32 -> length(readN(4));
+                case INT8 -> (byte) readN(1);
+                case INT16 -> (short) readN(2);
+                case INT32 -> readN(4);
+                default -> throw unexpected(b, "an integer");
+            };
+        }
+
+        String nullableString() {
+            if (peek() == NIL) {
+                position++;
+                return null;
+            }
+            return string();
+        }
+
+        String string() {
+            int b = read();
+            int length;
+            if ((b & 0xe0) == 0xa0) {
+                length = b & 0x1f;
+            } else {
+                length = switch (b) {
+                    case STR8 -> readN(1);
+                    case STR16 -> readN(2);
+                    case STR32 -> length(readN(4));
+                    default -> throw unexpected(b, "a string");
+                };
+            }
+            require(length);
+            var value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private int peek() {
+            require(1);
+            return bytes[position] & 0xff;
+        }
+
+        private int read() {
+            require(1);
+            return bytes[position++] & 0xff;
+        }
+
+        /**
+         * Reads a big-endian value of the given number of bytes.
+         */
+        private int readN(int count) {
+            require(count);
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                value = (value << 8) | (bytes[position++] & 0xff);
+            }
+            return value;
+        }
+
+        /**
+         * A 32-bit length or unsigned value, which must fit in an int.
+         */
+        private static int length(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Value too large");
+            }
+            return value;
+        }
+
+        private void require(int count) {
+            if (count > remaining()) {
+                throw new IllegalArgumentException("Unexpected end of data");
+            }
+        }
+
+        private static IllegalArgumentException unexpected(int b, String expected) {
+            return new IllegalArgumentException(String.format("Expected %s, found 0x%02x", expected, b));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import model.PetChange;
+import webSocketMessages.Notification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static serialization.Adapters.*;
+
+class NotificationAdapter extends TypeAdapter<Notification> {
+    private final TypeAdapter<PetChange> changeAdapter = new PetChangeAdapter();
+
+    @Override
+    public void write(JsonWriter out, Notification notification) throws IOException {
+        out.beginObject();
+        writeEnum(out, "type", notification.type());
+        writeString(out, "message", notification.message());
+        if (notification.notifications() != null) {
+            out.name("notifications").beginArray();
+            for (Notification item : notification.notifications()) {
+                write(out, item);
+            }
+            out.endArray();
+        }
+        if (notification.type() == Notification.Type.CHANGE) {
+            out.name("sequence").value(notification.sequence());
+        }
+        if (notification.changes() != null) {
+            out.name("changes").beginArray();
+            for (PetChange change : notification.changes()) {
+                changeAdapter.write(out, change);
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+
+    @Override
+    public Notification read(JsonReader in) throws IOException {
+        Notification.Type type = null;
+        String message = null;
+        List<Notification> notifications = null;
+        long sequence = 0;
+        List<PetChange> changes = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "type" -> type = readEnum(in, Notification.Type.class);
+                case "message" -> message = readString(in);
+                case "notifications" -> notifications = readNotifications(in);
+                case "sequence" -> sequence = in.nextLong();
+                case "changes" -> changes = readChanges(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Notification(type, message, notifications, sequence, changes);
+    }
+
+    private List<Notification> readNotifications(JsonReader in) throws IOException {
+        var notifications = new ArrayList<Notification>();
+        in.beginArray();
+        while (in.hasNext()) {
+            notifications.add(read(in));
+        }
+        in.endArray();
+        return notifications;
+    }
+
+    private List<PetChange> readChanges(JsonReader in) throws IOException {
+        var changes = new ArrayList<PetChange>();
+        in.beginArray();
+        while (in.hasNext()) {
+            changes.add(changeAdapter.read(in));
+        }
+        in.endArray();
+        return changes;
+    }
+}
@@ -0,0 +1,41 @@
+package serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import model.Pet;
+import model.PetType;
+
+import java.io.IOException;
+
+import static serialization.Adapters.*;
+
+class PetAdapter extends TypeAdapter<Pet> {
+    @Override
+    public void write(JsonWriter out, Pet pet) throws IOException {
+        out.beginObject();
+        out.name("id").value(pet.id());
+        writeString(out, "name", pet.name());
+        writeEnum(out, "type", pet.type());
+        out.endObject();
+    }
+
+    @Override
+    public Pet read(JsonReader in) throws IOException {
+        int id = 0;
+        String name = null;
+        PetType type = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> id = in.nextInt();
+                case "name" -> name = readString(in);
+                case "type" -> type = readEnum(in, PetType.class);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Pet(id, name, type);
+    }
+}
@@ -0,0 +1,48 @@
+package serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import model.Pet;
+import model.PetChange;
+
+import java.io.IOException;
+
+import static serialization.Adapters.*;
+
+class PetChangeAdapter extends TypeAdapter<PetChange> {
+    private final TypeAdapter<Pet> petAdapter = new PetAdapter().nullSafe();
+
+    @Override
+    public void write(JsonWriter out, PetChange change) throws IOException {
+        out.beginObject();
+        out.name("sequence").value(change.sequence());
+        writeEnum(out, "operation", change.operation());
+        out.name("id").value(change.id());
+        // A null pet is left out unless the writer serializes nulls.
+        out.name("pet");
+        petAdapter.write(out, change.pet());
+        out.endObject();
+    }
+
+    @Override
+    public PetChange read(JsonReader in) throws IOException {
+        long sequence = 0;
+        PetChange.Operation operation = null;
+        int id = 0;
+        Pet pet = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "sequence" -> sequence = in.nextLong();
+                case "operation" -> operation = readEnum(in, PetChange.Operation.class);
+                case "id" -> id = in.nextInt();
+                case "pet" -> pet = petAdapter.read(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new PetChange(sequence, operation, id, pet);
+    }
+}
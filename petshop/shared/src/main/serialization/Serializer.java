@@ -0,0 +1,65 @@
+package serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import model.Pet;
+import model.PetChange;
+import webSocketMessages.Action;
+import webSocketMessages.Notification;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * The single, shared {@link Gson} used for every JSON conversion in the pet shop.
+ * Gson is thread-safe once built, and reusing one instance keeps its adapter cache
+ * warm instead of rebuilding it through reflection on every call. The model and
+ * WebSocket message records use hand-written streaming adapters.
+ */
+public final class Serializer {
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Pet.class, new PetAdapter().nullSafe())
+            .registerTypeAdapter(PetChange.class, new PetChangeAdapter().nullSafe())
+            .registerTypeAdapter(Notification.class, new NotificationAdapter().nullSafe())
+            .registerTypeAdapter(Action.class, new ActionAdapter().nullSafe())
+            .create();
+
+    private Serializer() {
+    }
+
+    public static Gson gson() {
+        return GSON;
+    }
+
+    public static String toJson(Object object) {
+        return GSON.toJson(object);
+    }
+
+    public static <T> T fromJson(String json, Class<T> type) {
+        return GSON.fromJson(json, type);
+    }
+
+    /**
+     * Returns the JSON of a {@link Notification#batch} built from notifications that are already
+     * serialized, so that batching them does not serialize them again.
+     */
+    public static String batchJson(List<String> notifications) {
+        var json = new StringWriter();
+        try (JsonWriter out = new JsonWriter(json)) {
+            out.beginObject();
+            out.name("type").value(Notification.Type.BATCH.name());
+            out.name("notifications").beginArray();
+            for (String notification : notifications) {
+                out.jsonValue(notification);
+            }
+            out.endArray();
+            out.endObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return json.toString();
+    }
+}
@@ -1,92 +1,479 @@
 package server;
 
-import com.google.gson.Gson;
 import exception.ResponseException;
 import model.*;
+import serialization.BinaryCodec;
+import serialization.Serializer;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.*;
 import java.net.http.*;
 import java.net.http.HttpRequest.BodyPublisher;
 import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
+import static java.net.HttpURLConnection.HTTP_GONE;
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+
+/**
+ * The client side of the pet shop's HTTP API. Every operation has a blocking form, which
+ * throws a ResponseException, and an async form, whose future completes exceptionally with
+ * a ResponseException. The async forms let one thread keep thousands of requests in flight.
+ * <br/>
+ * The facade prefers HTTP/2, so that concurrent requests to a server that supports it share
+ * one connection, and falls back to HTTP/1.1 with pooled keep-alive connections otherwise.
+ * The JDK sizes that pool itself. Use {@link Builder#maxConcurrentRequests} to bound how many
+ * requests, and so how many HTTP/1.1 connections, are open at once.
+ */
 public class ServerFacade {
-    private final HttpClient client = HttpClient.newHttpClient();
+    /**
+     * Sent with the response to every write. See {@link #lastChangeSequence()}.
+     */
+    public static final String CHANGE_SEQUENCE_HEADER = "Change-Sequence";
+
+    private final HttpClient client;
     private final String serverUrl;
+    private final boolean binary;
+    private final Duration requestTimeout;
+    private final RequestLimiter limiter;
+    private volatile TaggedList lastList;
+    private final AtomicLong lastChangeSequence = new AtomicLong();
+
+    /**
+     * The last full listing and the ETag it was served with.
+     */
+    private record TaggedList(String etag, PetList pets) {
+    }
 
     public ServerFacade(String url) {
-        serverUrl = url;
+        this(builder(url));
+    }
+
+    /**
+     * With binary set, requests and responses use the compact {@link BinaryCodec} encoding
+     * rather than JSON, which is much cheaper to parse for large lists.
+     */
+    public ServerFacade(String url, boolean binary) {
+        this(builder(url).binary(binary));
+    }
+
+    private ServerFacade(Builder builder) {
+        var client = HttpClient.newBuilder()
+                .version(builder.version)
+                .connectTimeout(builder.connectTimeout);
+        if (builder.executor != null) {
+            client.executor(builder.executor);
+        }
+        this.client = client.build();
+        serverUrl = builder.url;
+        binary = builder.binary;
+        requestTimeout = builder.requestTimeout;
+        limiter = builder.maxConcurrentRequests > 0 ? new RequestLimiter(builder.maxConcurrentRequests) : null;
+    }
+
+    public static Builder builder(String url) {
+        return new Builder(url);
+    }
+
+    public static class Builder {
+        private final String url;
+        private boolean binary = false;
+        private HttpClient.Version version = HttpClient.Version.HTTP_2;
+        private Executor executor;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration requestTimeout = Duration.ofSeconds(30);
+        private int maxConcurrentRequests = 0;
+
+        private Builder(String url) {
+            this.url = url;
+        }
+
+        /**
+         * Uses the binary wire format instead of JSON.
+         */
+        public Builder binary(boolean binary) {
+            this.binary = binary;
+            return this;
+        }
+
+        /**
+         * The preferred protocol version. HTTP/2 by default, which falls back to HTTP/1.1
+         * when the server does not support it.
+         */
+        public Builder version(HttpClient.Version version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * The executor that runs response handling and completes the async futures. By default
+         * the HTTP client creates its own.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * How long to wait for each response before failing the request.
+         */
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * The most requests to have in flight at once. Requests beyond that wait in order for
+         * one to finish, without blocking the caller. 0, the default, means no limit.
+         */
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        public ServerFacade build() {
+            return new ServerFacade(this);
+        }
+    }
+
+    /**
+     * The highest change sequence number the server has reported after a write made through this
+     * facade. A copy of the pets that has applied every change up to it includes those writes.
+     */
+    public long lastChangeSequence() {
+        return lastChangeSequence.get();
     }
 
     public Pet addPet(Pet pet) throws ResponseException {
-        var request = buildRequest("POST", "/pet", pet);
-        var response = sendRequest(request);
-        return handleResponse(response, Pet.class);
+        return await(addPetAsync(pet));
+    }
+
+    public CompletableFuture<Pet> addPetAsync(Pet pet) {
+        return send(buildRequest("POST", "/pet", pet), Pet.class);
+    }
+
+    public PetList addPets(Collection<Pet> pets) throws ResponseException {
+        return await(addPetsAsync(pets));
+    }
+
+    public CompletableFuture<PetList> addPetsAsync(Collection<Pet> pets) {
+        return send(buildRequest("POST", "/pets:batch", pets), PetList.class);
+    }
+
+    /**
+     * Returns the pet with the given ID, or null if there is none.
+     */
+    public Pet getPet(int id) throws ResponseException {
+        return await(getPetAsync(id));
+    }
+
+    public CompletableFuture<Pet> getPetAsync(int id) {
+        var path = String.format("/pet/%s", id);
+        return sendRequest(buildRequest("GET", path, null)).thenApply(response ->
+                response.statusCode() == HTTP_NOT_FOUND ? null : handle(response, Pet.class));
     }
 
     public void deletePet(int id) throws ResponseException {
+        await(deletePetAsync(id));
+    }
+
+    public CompletableFuture<Void> deletePetAsync(int id) {
         var path = String.format("/pet/%s", id);
-        var request = buildRequest("DELETE", path, null);
-        var response = sendRequest(request);
-        handleResponse(response, null);
+        return send(buildRequest("DELETE", path, null), Void.class);
+    }
+
+    public void deletePets(Collection<Integer> ids) throws ResponseException {
+        await(deletePetsAsync(ids));
+    }
+
+    public CompletableFuture<Void> deletePetsAsync(Collection<Integer> ids) {
+        return send(buildRequest("DELETE", "/pets:batch", ids), Void.class);
     }
 
     public void deleteAllPets() throws ResponseException {
-        var request = buildRequest("DELETE", "/pet", null);
-        sendRequest(request);
+        await(deleteAllPetsAsync());
+    }
+
+    public CompletableFuture<Void> deleteAllPetsAsync() {
+        return sendRequest(buildRequest("DELETE", "/pet", null)).thenApply(response -> null);
     }
 
     public PetList listPets() throws ResponseException {
-        var request = buildRequest("GET", "/pet", null);
-        var response = sendRequest(request);
-        return handleResponse(response, PetList.class);
+        return await(listPetsAsync());
+    }
+
+    /**
+     * Returns every pet. The last listing is kept along with its ETag and the request is
+     * made conditional, so when nothing has changed the server answers 304 Not Modified
+     * without a body and the kept listing is returned instead.
+     */
+    public CompletableFuture<PetList> listPetsAsync() {
+        var last = lastList;
+        var builder = requestBuilder("GET", "/pet", null);
+        if (last != null) {
+            builder.setHeader("If-None-Match", last.etag());
+        }
+        return sendRequest(builder.build()).thenApply(response -> {
+            if (last != null && response.statusCode() == HTTP_NOT_MODIFIED) {
+                return new PetList(last.pets());
+            }
+
+            PetList pets = handle(response, PetList.class);
+            var etag = response.headers().firstValue("ETag");
+            lastList = etag.map(tag -> new TaggedList(tag, new PetList(pets))).orElse(null);
+            return pets;
+        });
+    }
+
+    /**
+     * Returns one page of pets. Pass query.next(page) to get the page after it.
+     */
+    public PetList listPets(PetQuery query) throws ResponseException {
+        return await(listPetsAsync(query));
+    }
+
+    public CompletableFuture<PetList> listPetsAsync(PetQuery query) {
+        var path = new StringBuilder("/pet?limit=").append(query.limit());
+        if (query.afterId() > 0) {
+            path.append("&after=").append(query.afterId());
+        }
+        if (query.type() != null) {
+            path.append("&type=").append(query.type());
+        }
+        if (query.namePrefix() != null) {
+            path.append("&name=").append(URLEncoder.encode(query.namePrefix(), StandardCharsets.UTF_8));
+        }
+        return send(buildRequest("GET", path.toString(), null), PetList.class);
+    }
+
+    /**
+     * Returns the changes made after the sequence number, or null if the server no longer has
+     * all of them.
+     */
+    public PetChanges listChanges(long after) throws ResponseException {
+        return await(listChangesAsync(after));
+    }
+
+    public CompletableFuture<PetChanges> listChangesAsync(long after) {
+        var path = String.format("/changes?after=%d", after);
+        return sendRequest(buildRequest("GET", path, null)).thenApply(response ->
+                response.statusCode() == HTTP_GONE ? null : handle(response, PetChanges.class));
     }
 
     private HttpRequest buildRequest(String method, String path, Object body) {
+        return requestBuilder(method, path, body).build();
+    }
+
+    private HttpRequest.Builder requestBuilder(String method, String path, Object body) {
         var request = HttpRequest.newBuilder()
                 .uri(URI.create(serverUrl + path))
-                .method(method, makeRequestBody(body));
+                .timeout(requestTimeout)
+                .method(method, makeRequestBody(body))
+                .setHeader("Accept", binary ? BinaryCodec.CONTENT_TYPE : "application/json")
+                .setHeader("Accept-Encoding", "gzip");
         if (body != null) {
-            request.setHeader("Content-Type", "application/json");
+            request.setHeader("Content-Type", binary ? BinaryCodec.CONTENT_TYPE : "application/json");
         }
-        return request.build();
+        return request;
     }
 
     private BodyPublisher makeRequestBody(Object request) {
-        if (request != null) {
-            return BodyPublishers.ofString(new Gson().toJson(request));
-        } else {
+        if (request == null) {
             return BodyPublishers.noBody();
+        } else if (binary) {
+            return BodyPublishers.ofByteArray(BinaryCodec.encode(request));
+        } else {
+            return BodyPublishers.ofString(Serializer.toJson(request));
+        }
+    }
+
+    /**
+     * Sends the request and decodes the response as the given type, or as nothing for Void.
+     */
+    private <T> CompletableFuture<T> send(HttpRequest request, Class<T> responseClass) {
+        return sendRequest(request).thenApply(response -> handle(response, responseClass == Void.class ? null : responseClass));
+    }
+
+    /**
+     * Sends the request, failing with a ResponseException if there is no response.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> sendRequest(HttpRequest request) {
+        Supplier<CompletableFuture<HttpResponse<byte[]>>> send = () -> client.sendAsync(request, ServerFacade::decodedBody);
+        var sent = limiter != null ? limiter.submit(send) : send.get();
+        return sent.exceptionallyCompose(ex -> {
+            var cause = ex instanceof CompletionException ? ex.getCause() : ex;
+            return CompletableFuture.failedFuture(new ResponseException(ResponseException.Code.ServerError, String.valueOf(cause.getMessage())));
+        }).thenApply(response -> {
+            response.headers().firstValueAsLong(CHANGE_SEQUENCE_HEADER)
+                    .ifPresent(sequence -> lastChangeSequence.accumulateAndGet(sequence, Math::max));
+            return response;
+        });
+    }
+
+    /**
+     * Waits for the future, rethrowing its ResponseException.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws ResponseException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof ResponseException responseException) {
+                throw responseException;
+            }
+            throw new ResponseException(ResponseException.Code.ServerError, String.valueOf(ex.getCause().getMessage()));
         }
     }
 
-    private HttpResponse<String> sendRequest(HttpRequest request) throws ResponseException {
+    /**
+     * Reads the body, gunzipping it first if the server compressed it.
+     */
+    private static BodySubscriber<byte[]> decodedBody(HttpResponse.ResponseInfo info) {
+        var encoding = info.headers().firstValue("Content-Encoding").orElse("");
+        if (!encoding.equalsIgnoreCase("gzip")) {
+            return BodySubscribers.ofByteArray();
+        }
+        return BodySubscribers.mapping(BodySubscribers.ofByteArray(), compressed -> {
+            try (var in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                return in.readAllBytes();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * handleResponse for use inside a future's stages, where the exception has to be unchecked.
+     */
+    private <T> T handle(HttpResponse<byte[]> response, Class<T> responseClass) {
         try {
-            return client.send(request, BodyHandlers.ofString());
-        } catch (Exception ex) {
-            throw new ResponseException(ResponseException.Code.ServerError, ex.getMessage());
+            return handleResponse(response, responseClass);
+        } catch (ResponseException ex) {
+            throw new CompletionException(ex);
         }
     }
 
-    private <T> T handleResponse(HttpResponse<String> response, Class<T> responseClass) throws ResponseException {
+    private <T> T handleResponse(HttpResponse<byte[]> response, Class<T> responseClass) throws ResponseException {
         var status = response.statusCode();
         if (!isSuccessful(status)) {
             var body = response.body();
-            if (body != null) {
-                throw ResponseException.fromJson(body);
+            if (body != null && body.length > 0) {
+                throw decode(response, ResponseException.class);
             }
 
             throw new ResponseException(ResponseException.fromHttpStatusCode(status), "other failure: " + status);
         }
 
         if (responseClass != null) {
-            return new Gson().fromJson(response.body(), responseClass);
+            return decode(response, responseClass);
         }
 
         return null;
     }
 
+    /**
+     * Decodes the body as the type the server says it sent, which is JSON unless the
+     * Content-Type is the binary encoding.
+     */
+    private static <T> T decode(HttpResponse<byte[]> response, Class<T> type) throws ResponseException {
+        var contentType = response.headers().firstValue("Content-Type").orElse("");
+        if (!contentType.startsWith(BinaryCodec.CONTENT_TYPE)) {
+            if (type == ResponseException.class) {
+                return type.cast(ResponseException.fromJson(new String(response.body(), StandardCharsets.UTF_8)));
+            }
+            return Serializer.fromJson(new String(response.body(), StandardCharsets.UTF_8), type);
+        }
+        try {
+            return BinaryCodec.decode(response.body(), type);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseException(ResponseException.Code.ServerError, "Error: malformed response: " + ex.getMessage());
+        }
+    }
+
     private boolean isSuccessful(int status) {
         return status / 100 == 2;
     }
+
+    /**
+     * Bounds the number of requests in flight. A request that arrives when every permit is
+     * taken is queued, and is started by whichever request finishes next.
+     */
+    private static class RequestLimiter {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+        private int available;
+
+        RequestLimiter(int permits) {
+            available = permits;
+        }
+
+        <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> send) {
+            var result = new CompletableFuture<T>();
+            Runnable start = () -> {
+                CompletableFuture<T> sent;
+                try {
+                    sent = send.get();
+                } catch (RuntimeException ex) {
+                    sent = CompletableFuture.failedFuture(ex);
+                }
+                sent.whenComplete((value, ex) -> {
+                    release();
+                    if (ex != null) {
+                        result.completeExceptionally(ex);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            };
+
+            lock.lock();
+            try {
+                if (available == 0) {
+                    waiting.addLast(start);
+                    return result;
+                }
+                available--;
+            } finally {
+                lock.unlock();
+            }
+            start.run();
+            return result;
+        }
+
+        private void release() {
+            Runnable next;
+            lock.lock();
+            try {
+                next = waiting.pollFirst();
+                if (next == null) {
+                    available++;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // The permit passes straight to the next request.
+            if (next != null) {
+                next.run();
+            }
+        }
+    }
 }
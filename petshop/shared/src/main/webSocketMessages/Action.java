@@ -1,14 +1,40 @@
 package webSocketMessages;
 
-import com.google.gson.Gson;
+import serialization.Serializer;
 
-public record Action(Type type, String visitorName) {
+/**
+ * A message from a client. ENTER and EXIT carry the visitor's name, SUBSCRIBE and
+ * UNSUBSCRIBE carry one of the {@link Topic}s, and BATCH carries the batching settings.
+ */
+public record Action(Type type, String visitorName, String topic, Batching batching) {
     public enum Type {
         ENTER,
-        EXIT
+        EXIT,
+        SUBSCRIBE,
+        UNSUBSCRIBE,
+        BATCH
+    }
+
+    /**
+     * Asks the server to collect the notifications produced within windowMillis of each other,
+     * up to maxItems of them, into one BATCH notification. A window of 0 turns batching off.
+     */
+    public record Batching(int windowMillis, int maxItems) {
+    }
+
+    public Action(Type type, String visitorName) {
+        this(type, visitorName, null, null);
+    }
+
+    public Action(Type type, String visitorName, String topic) {
+        this(type, visitorName, topic, null);
+    }
+
+    public static Action batch(int windowMillis, int maxItems) {
+        return new Action(Type.BATCH, null, null, new Batching(windowMillis, maxItems));
     }
 
     public String toString() {
-        return new Gson().toJson(this);
+        return Serializer.toJson(this);
     }
 }
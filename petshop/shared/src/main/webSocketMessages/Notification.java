@@ -1,15 +1,46 @@
 package webSocketMessages;
 
-import com.google.gson.Gson;
+import model.PetChange;
+import serialization.Serializer;
 
-public record Notification(Type type, String message) {
+import java.util.List;
+
+/**
+ * A message from the server. A BATCH notification carries several notifications that were
+ * delivered together in one frame, and has no message of its own.
+ * <br/>
+ * A CHANGE notification carries {@link PetChange}s for clients that keep their own copy of
+ * the pets, and is only sent to sessions subscribed to {@link Topic#CHANGES}. Subscribing
+ * is answered with a CHANGE notification that has no changes, whose sequence is the last
+ * change made before the subscription took effect. Every later change will be delivered.
+ */
+public record Notification(Type type, String message, List<Notification> notifications,
+                           long sequence, List<PetChange> changes) {
     public enum Type {
         ARRIVAL,
         NOISE,
-        DEPARTURE
+        DEPARTURE,
+        BATCH,
+        CHANGE
+    }
+
+    public Notification(Type type, String message) {
+        this(type, message, null, 0, null);
+    }
+
+    public static Notification batch(List<Notification> notifications) {
+        return new Notification(Type.BATCH, null, notifications, 0, null);
+    }
+
+    /**
+     * The changes, or just the sequence number if there are none. The sequence is that of
+     * the last change.
+     */
+    public static Notification changes(long sequence, List<PetChange> changes) {
+        return new Notification(Type.CHANGE, null, null, sequence, changes);
     }
 
     public String toString() {
-        return new Gson().toJson(this);
+        return Serializer.toJson(this);
     }
 }
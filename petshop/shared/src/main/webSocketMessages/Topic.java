@@ -0,0 +1,86 @@
+package webSocketMessages;
+
+import model.Pet;
+import model.PetType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The topics a WebSocket session can subscribe to. A session with no subscriptions
+ * receives every notification. Once it subscribes, it only receives notifications
+ * published to at least one of its topics.
+ * <ul>
+ *     <li>{@code visitors}: visitors entering and leaving the shop</li>
+ *     <li>{@code pets}: every pet notification</li>
+ *     <li>{@code pet-type:CAT}: notifications about pets of one type</li>
+ *     <li>{@code pet:42}: notifications about one pet</li>
+ *     <li>{@code changes}: every change to the pets, as CHANGE notifications. These only go to
+ *     sessions subscribed to this topic, never to sessions without subscriptions.</li>
+ * </ul>
+ */
+public final class Topic {
+    public static final String VISITORS = "visitors";
+    public static final String PETS = "pets";
+    public static final String CHANGES = "changes";
+    private static final String PET_TYPE_PREFIX = "pet-type:";
+    private static final String PET_PREFIX = "pet:";
+
+    private Topic() {
+    }
+
+    public static String petType(PetType type) {
+        return PET_TYPE_PREFIX + type.name();
+    }
+
+    public static String pet(int id) {
+        return PET_PREFIX + id;
+    }
+
+    /**
+     * The topics a notification about the pet is published to.
+     */
+    public static List<String> of(Pet pet) {
+        var topics = new ArrayList<String>(3);
+        topics.add(PETS);
+        if (pet.type() != null) {
+            topics.add(petType(pet.type()));
+        }
+        topics.add(pet(pet.id()));
+        return topics;
+    }
+
+    /**
+     * The topics a notification about all the pets is published to, without duplicates.
+     */
+    public static Collection<String> of(Collection<Pet> pets) {
+        var topics = new LinkedHashSet<String>();
+        for (Pet pet : pets) {
+            topics.addAll(of(pet));
+        }
+        return topics;
+    }
+
+    public static boolean isValid(String topic) {
+        if (topic == null) {
+            return false;
+        }
+        if (topic.equals(VISITORS) || topic.equals(PETS) || topic.equals(CHANGES)) {
+            return true;
+        }
+        try {
+            if (topic.startsWith(PET_TYPE_PREFIX)) {
+                PetType.valueOf(topic.substring(PET_TYPE_PREFIX.length()));
+                return true;
+            }
+            if (topic.startsWith(PET_PREFIX)) {
+                return Integer.parseInt(topic.substring(PET_PREFIX.length())) > 0;
+            }
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,81 @@
+package serialization;
+
+import exception.ResponseException;
+import model.Pet;
+import model.PetList;
+import model.PetType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+
+    @Test
+    void petRoundTrip() {
+        for (var pet : List.of(
+                new Pet(1, "joe", PetType.CAT),
+                new Pet(0, null, null),
+                new Pet(-1, "", PetType.ROCK),
+                new Pet(Integer.MAX_VALUE, "ünïcødé 🐈", PetType.FISH),
+                new Pet(Integer.MIN_VALUE, "x".repeat(70_000), PetType.DOG))) {
+            assertEquals(pet, BinaryCodec.decode(BinaryCodec.encode(pet), Pet.class));
+        }
+    }
+
+    @Test
+    void petListRoundTrip() {
+        var pets = new PetList();
+        for (int i = 0; i < 70_000; i += 7) {
+            pets.add(new Pet(i, "pet-" + i, PetType.values()[i % PetType.values().length]));
+        }
+        assertEquals(pets, BinaryCodec.decode(BinaryCodec.encode(pets), PetList.class));
+        assertEquals(new PetList(), BinaryCodec.decode(BinaryCodec.encode(new PetList()), PetList.class));
+    }
+
+    @Test
+    void agreesWithJson() {
+        var pets = new PetList();
+        pets.add(new Pet(42, "sally", PetType.BIRD));
+        pets.add(new Pet(300, null, PetType.FROG));
+
+        var fromJson = Serializer.fromJson(pets.toString(), PetList.class);
+        assertEquals(fromJson, BinaryCodec.decode(BinaryCodec.encode(pets), PetList.class));
+        assertEquals(pets.toString(), BinaryCodec.decode(BinaryCodec.encode(fromJson), PetList.class).toString());
+    }
+
+    @Test
+    void idsRoundTrip() {
+        Integer[] ids = {1, 127, 128, 255, 256, 65_535, 65_536, -32, -33, Integer.MAX_VALUE};
+        assertArrayEquals(ids, BinaryCodec.decode(BinaryCodec.encode(List.of(ids)), Integer[].class));
+    }
+
+    @Test
+    void exceptionRoundTrip() {
+        var ex = new ResponseException(ResponseException.Code.ClientError, "Error: no dogs with fleas");
+        var decoded = BinaryCodec.decode(BinaryCodec.encode(ex), ResponseException.class);
+        assertEquals(ex.code(), decoded.code());
+        assertEquals(ex.getMessage(), decoded.getMessage());
+    }
+
+    @Test
+    void isMessagePack() {
+        // [1, "joe", "CAT"] as a fixarray of a positive fixint and two fixstrs.
+        byte[] expected = {(byte) 0x93, 0x01, (byte) 0xa3, 'j', 'o', 'e', (byte) 0xa3, 'C', 'A', 'T'};
+        assertArrayEquals(expected, BinaryCodec.encode(new Pet(1, "joe", PetType.CAT)));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        byte[] pet = BinaryCodec.encode(new Pet(1, "joe", PetType.CAT));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(new byte[0], Pet.class));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(Arrays.copyOf(pet, pet.length - 1), Pet.class));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(Arrays.copyOf(pet, pet.length + 1), Pet.class));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(pet, PetList.class));
+        // An array32 header claiming two billion elements.
+        byte[] huge = {(byte) 0xdd, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(huge, Integer[].class));
+    }
+}
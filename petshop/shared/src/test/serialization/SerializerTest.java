@@ -0,0 +1,31 @@
+package serialization;
+
+import model.Pet;
+import model.PetChange;
+import model.PetType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SerializerTest {
+
+    @Test
+    void petChangeRoundTrip() {
+        Pet joe = new Pet(7, "joe", PetType.CAT);
+        for (var change : List.of(
+                PetChange.added(1, joe),
+                PetChange.removed(2, joe),
+                PetChange.cleared(3),
+                new PetChange(4, PetChange.Operation.REMOVE, 7, null))) {
+            assertEquals(change, Serializer.fromJson(Serializer.toJson(change), PetChange.class));
+        }
+    }
+
+    @Test
+    void petChangeWithNullPet() {
+        var json = "{\"sequence\":5,\"operation\":\"REMOVE\",\"id\":7,\"pet\":null}";
+        assertEquals(new PetChange(5, PetChange.Operation.REMOVE, 7, null), Serializer.fromJson(json, PetChange.class));
+    }
+}